@@ -0,0 +1,107 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the query throughput of one shared {@link Corpus} with 1, 4 and 16 concurrent clients. With a concurrent
+ * read path, the throughput should grow with the number of clients until the cores are saturated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentQueryBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param("1000")
+    int fileCount;
+
+    @Param("5000")
+    int fileSize;
+
+    @Param("0.5")
+    double germanRatio;
+
+    @Param("3000")
+    int limit;
+
+    private Path root;
+
+    private Corpus corpus;
+
+    private final String[] queries = new String[QUERIES];
+
+
+    /** The query sequence of a single client. */
+    @State(Scope.Thread)
+    public static class Client {
+
+        private int next = (int) Thread.currentThread().threadId();
+
+    }
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root   = SyntheticCorpus.create(fileCount, fileSize, germanRatio, 42);
+        corpus = new Corpus(new FileSystemScanner(root.toString()));
+
+        Random random = new Random(4711);
+        for (int i = 0; i < QUERIES; i++) queries[i] = SyntheticCorpus.query(random, germanRatio);
+
+        corpus.getPassages(queries[0], limit); // initial indexing is not part of the measurement
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(root);
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    public String clients01(Client client) {
+        return query(client);
+    }
+
+
+    @Benchmark
+    @Threads(4)
+    public String clients04(Client client) {
+        return query(client);
+    }
+
+
+    @Benchmark
+    @Threads(16)
+    public String clients16(Client client) {
+        return query(client);
+    }
+
+
+    private String query(Client client) {
+        return corpus.getPassages(queries[Math.floorMod(client.next++, QUERIES)], limit);
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the query latency of {@link Corpus#getPassages(String, int)} on an already indexed synthetic corpus,
+ * including the (incremental) rescan that every query performs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorpusBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param("1000")
+    int fileCount;
+
+    @Param("5000")
+    int fileSize;
+
+    @Param("0.5")
+    double germanRatio;
+
+    @Param("3000")
+    int limit;
+
+    @Param({ "false", "true" })
+    boolean invertedIndex;
+
+    @Param({ "false", "true" })
+    boolean sparseScores;
+
+    private Path root;
+
+    private Corpus corpus;
+
+    private final String[] queries = new String[QUERIES];
+
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root   = SyntheticCorpus.create(fileCount, fileSize, germanRatio, 42);
+        corpus = new Corpus(new FileSystemScanner(root.toString())).invertedIndex(invertedIndex).sparseScores(sparseScores);
+
+        Random random = new Random(4711);
+        for (int i = 0; i < QUERIES; i++) queries[i] = SyntheticCorpus.query(random, germanRatio);
+
+        corpus.getPassages(queries[0], limit); // initial indexing is not part of the measurement
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(root);
+    }
+
+
+    @Benchmark
+    public String getPassages() {
+        return corpus.getPassages(queries[next++ % QUERIES], limit);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qaware.mcp.tools.knowledge.nlp.Chars;
+import com.qaware.mcp.tools.knowledge.quantization.CountMinSketch;
+
+/** Measures DF lookups via {@link CountMinSketch#getRaw(long)} on the shipped German/English sketch. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CountMinSketchBenchmark {
+
+    private static final int HASHES = 1024;
+
+    private final long[] hashes = new long[HASHES];
+
+    private CountMinSketch countMinSketch;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        countMinSketch = new CountMinSketch(4, Serialization.<byte[]>readObject("df-de-en-freq-count-min-sketch.dat"));
+
+        Random random = new Random(42);
+        for (int i = 0; i < HASHES; i++) hashes[i] = Chars.hash(SyntheticCorpus.query(random, 0.5).split(" ")[0]);
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(HASHES)
+    public int getRaw() {
+        int sum = 0;
+        for (long hash : hashes) sum += countMinSketch.getRaw(hash);
+        return sum;
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qaware.mcp.tools.knowledge.nlp.Tokens;
+
+/**
+ * Measures adding the tokens of documents to one shared {@link Dictionary} from 1, 4 and 16 threads, like the parallel
+ * scanner threads of a cold index build. Each iteration starts with an empty dictionary; most tokens are known after a
+ * few documents and only looked up, the long tail vocabulary keeps inserting. Without contention, the throughput should
+ * grow with the number of threads until the cores are saturated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryBenchmark {
+
+    private static final int DOCS = 256;
+
+    @Param("2000")
+    int docSize;
+
+    @Param("0.5")
+    double germanRatio;
+
+    private final char[][][] docs = new char[DOCS][][];
+
+    private Dictionary dictionary;
+
+
+    /** The document sequence of a single scanner thread. */
+    @State(Scope.Thread)
+    public static class Scanner {
+
+        private int next = (int) Thread.currentThread().threadId();
+
+    }
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < DOCS; i++) {
+            List<char[]> tokens = new ArrayList<>();
+
+            Tokens filter = Linguistic.newFilter().reset(SyntheticCorpus.text(random, docSize, germanRatio));
+            while (filter.next()) tokens.add(Arrays.copyOf(filter.buffer(), filter.length()));
+
+            docs[i] = tokens.toArray(new char[0][]);
+        }
+    }
+
+
+    @Setup(Level.Iteration)
+    public void newDictionary() {
+        dictionary = new Dictionary();
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    public int threads01(Scanner scanner) {
+        return add(scanner);
+    }
+
+
+    @Benchmark
+    @Threads(4)
+    public int threads04(Scanner scanner) {
+        return add(scanner);
+    }
+
+
+    @Benchmark
+    @Threads(16)
+    public int threads16(Scanner scanner) {
+        return add(scanner);
+    }
+
+
+    /** Adds the tokens of the next document, returns the sum of their IDs. */
+    private int add(Scanner scanner) {
+        int sum = 0;
+        for (char[] token : docs[Math.floorMod(scanner.next++, DOCS)]) sum += dictionary.add(token, 0, token.length);
+        return sum;
+    }
+
+}
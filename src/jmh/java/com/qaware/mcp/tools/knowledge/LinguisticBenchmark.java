@@ -0,0 +1,72 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qaware.mcp.tools.knowledge.nlp.Filter;
+import com.qaware.mcp.tools.knowledge.nlp.TokenizerSimple;
+import com.qaware.mcp.tools.knowledge.nlp.Tokens;
+
+/**
+ * Measures the tokenization throughput of the full {@link Linguistic#newFilter()} chain compared to the bare
+ * {@link TokenizerSimple}. One operation is one text of {@code fileSize} chars.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinguisticBenchmark {
+
+    @Param("50000")
+    int fileSize;
+
+    @Param({"0", "0.5", "1"})
+    double germanRatio;
+
+    private final Filter filter = Linguistic.newFilter();
+
+    private final TokenizerSimple tokenizer = new TokenizerSimple();
+
+    private String text;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = SyntheticCorpus.text(new Random(42), fileSize, germanRatio);
+    }
+
+
+    @Benchmark
+    public long filterChain() {
+        return consume(filter.reset(text));
+    }
+
+
+    @Benchmark
+    public long tokenizerOnly() {
+        return consume(tokenizer.reset(text));
+    }
+
+
+    private static long consume(Tokens tokens) {
+        long hash = 0;
+        while (tokens.next()) hash += tokens.hash();
+        return hash;
+    }
+
+}
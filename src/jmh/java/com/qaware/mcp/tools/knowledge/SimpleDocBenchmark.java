@@ -0,0 +1,98 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qaware.mcp.tools.knowledge.nlp.Filter;
+
+/**
+ * Measures {@link SimpleDoc} construction (tokenization, dictionary lookup, position chains) and
+ * {@link SimpleDoc#smooth(float[], Smoothing)} for a varying number of scored positions and both {@link Smoothing}s, scalar
+ * and with the Vector API ({@link VectorSmoothing}, needs {@code --add-modules jdk.incubator.vector}, which the
+ * {@code jmh} task sets).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleDocBenchmark {
+
+    @Param("50000")
+    int fileSize;
+
+    @Param("0.5")
+    double germanRatio;
+
+    @Param({"10", "100", "1000", "10000"})
+    int hits;
+
+    @Param({"KERNEL", "EXPONENTIAL"})
+    String smoothingName; // Smoothing is package-private, the generated code in jmh_generated cannot set it
+
+    private Smoothing smoothing;
+
+    private final Filter filter = Linguistic.newFilter();
+
+    private final Dictionary dictionary = new Dictionary();
+
+    private String text;
+
+    private float[] scores;
+
+    private float[] work;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+
+        smoothing = Smoothing.valueOf(smoothingName);
+        text = SyntheticCorpus.text(random, fileSize, germanRatio);
+
+        int positions = new SimpleDoc(0, 0, dictionary, filter.reset(text)).size();
+
+        scores = new float[positions];
+        for (int i = 0; i < hits; i++) scores[random.nextInt(positions)] = 1 + random.nextFloat() * 70;
+
+        work = new float[positions];
+    }
+
+
+    @Benchmark
+    public SimpleDoc construct() {
+        return new SimpleDoc(0, 0, dictionary, filter.reset(text));
+    }
+
+
+    /** Includes copying the unsmoothed scores into the work array, which is small compared to the smoothing. */
+    @Benchmark
+    public float[] smoothScalar() {
+        System.arraycopy(scores, 0, work, 0, scores.length);
+        SimpleDoc.smoothScalar(work, smoothing);
+        return work;
+    }
+
+
+    @Benchmark
+    public float[] smoothVector() {
+        System.arraycopy(scores, 0, work, 0, scores.length);
+        VectorSmoothing.smooth(work, smoothing);
+        return work;
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates a reproducible synthetic document tree for the benchmarks, so they run offline and their results can be
+ * compared across commits.
+ * <p>
+ * Words are drawn from a small German and a small English base vocabulary plus a long tail of generated words. The
+ * draw is log-uniform, which gives a Zipf-like frequency distribution similar to real documentation.
+ */
+enum SyntheticCorpus {
+
+    ;
+
+
+    private static final String[] ENGLISH = (
+            "the of and to in is that for it as with was on be by this are from or have an they which one you were "
+          + "all we when there can been has more if will no out so what up about into than them only other new some "
+          + "time could these two may first then do any like my now over such our man me even most made after also "
+          + "did many before must through back years where much your way well down should because each just those "
+          + "server client request response kafka consumer producer partition offset lag topic broker cluster "
+          + "configuration deployment container kubernetes database index query document passage token budget "
+          + "latency throughput memory cache thread lock queue pipeline stream batch record schema version release"
+        ).split(" ");
+
+    private static final String[] GERMAN = (
+            "der die und in den von zu das mit sich des auf für ist im dem nicht ein eine als auch es an werden aus "
+          + "er hat dass sie nach wird bei einer um am sind noch wie einem über einen so zum war haben nur oder aber "
+          + "vor zur bis mehr durch man sein wurde sei prozent hatte kann gegen vom können schon wenn habe seine "
+          + "schnittstelle anwendung dienst anfrage antwort datenbank verzeichnis abfrage dokument abschnitt "
+          + "speicher zwischenspeicher warteschlange verarbeitung bereitstellung konfiguration freigabe fehler "
+          + "benutzer berechtigung anmeldung abrechnung vertrag kunde lieferung bestellung rechnung zahlung"
+        ).split(" ");
+
+    private static final String[] SYLLABLES = "ka ro mi tu sel ber ant lo qui ve zen dor fa ti gru pe nor as ul wik".split(" ");
+
+    private static final int TAIL_SIZE = 20_000;
+
+
+    /**
+     * Creates a temporary directory containing {@code fileCount} text files of roughly {@code fileSize} chars each.
+     *
+     * @param germanRatio probability (0..1) for each sentence to be German instead of English
+     */
+    static Path create(int fileCount, int fileSize, double germanRatio, long seed) {
+        Random random = new Random(seed);
+
+        try {
+            Path root = Files.createTempDirectory("synthetic-corpus");
+
+            for (int i = 0; i < fileCount; i++) {
+                Path dir = root.resolve("dir" + i % 32);
+                Files.createDirectories(dir);
+                Files.writeString(dir.resolve("doc" + i + ".md"), text(random, fileSize, germanRatio));
+            }
+
+            return root;
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /** Deletes a directory created by {@link #create(int, int, double, long)}. */
+    static void delete(Path root) {
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /** Creates a text of roughly {@code size} chars built of sentences and paragraphs. */
+    static String text(Random random, int size, double germanRatio) {
+        StringBuilder stringBuilder = new StringBuilder(size + 100);
+
+        while (stringBuilder.length() < size) {
+            boolean german = random.nextDouble() < germanRatio;
+
+            int words = 5 + random.nextInt(15);
+            for (int i = 0; i < words; i++) {
+                String word = word(random, german);
+                if (i == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                stringBuilder.append(word).append(i == words - 1 ? ". " : " ");
+            }
+
+            if (random.nextInt(5) == 0) stringBuilder.append("\n\n");
+        }
+
+        return stringBuilder.toString();
+    }
+
+
+    /** Creates a query of a few terms, mixing frequent and long tail words. */
+    static String query(Random random, double germanRatio) {
+        StringBuilder stringBuilder = new StringBuilder();
+
+        int terms = 1 + random.nextInt(4);
+        for (int i = 0; i < terms; i++) stringBuilder.append(word(random, random.nextDouble() < germanRatio)).append(' ');
+
+        return stringBuilder.toString().trim();
+    }
+
+
+    private static String word(Random random, boolean german) {
+        String[] vocabulary = german ? GERMAN : ENGLISH;
+
+        int rank = (int) Math.exp(random.nextDouble() * Math.log(vocabulary.length + TAIL_SIZE)) - 1;
+
+        return rank < vocabulary.length ? vocabulary[rank] : tail(rank - vocabulary.length, german);
+    }
+
+
+    private static String tail(int index, boolean german) {
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (int i = index + 1; i > 0; i /= SYLLABLES.length) stringBuilder.append(SYLLABLES[i % SYLLABLES.length]);
+
+        return stringBuilder.append(german ? "ung" : "ing").toString();
+    }
+
+}
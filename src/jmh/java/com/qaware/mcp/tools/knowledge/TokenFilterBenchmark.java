@@ -0,0 +1,130 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.qaware.mcp.tools.knowledge.nlp.Tokens;
+
+/**
+ * Measures finding the documents containing the terms of a query without an inverted index: the lookup of
+ * {@link TokenData#lastPos(int)} in every document, with and without probing its {@link TokenFilter} first. The
+ * synthetic corpus has a long tail vocabulary, so most documents do not contain most query terms. The token data is
+ * on the heap (hash lookup) or mapped (binary search), see {@link TokenStore}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenFilterBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param("10000")
+    int docCount;
+
+    @Param("2000")
+    int docSize;
+
+    @Param("0.5")
+    double germanRatio;
+
+    @Param({ "false", "true" })
+    boolean mapped;
+
+    private Path dir;
+
+    private TokenData[] tokenData;
+
+    private TokenFilter[] tokenFilters;
+
+    private final int[][] queries = new int[QUERIES][];
+
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        Dictionary dictionary = new Dictionary();
+
+        dir = Files.createTempDirectory("token-filter-benchmark");
+        TokenStore tokenStore = new TokenStore(dir);
+
+        tokenData    = new TokenData[docCount];
+        tokenFilters = new TokenFilter[docCount];
+
+        for (int i = 0; i < docCount; i++) {
+            HeapTokenData heapTokenData = new HeapTokenData();
+
+            Tokens tokens = Linguistic.newFilter().reset(SyntheticCorpus.text(random, docSize, germanRatio));
+            while (tokens.next()) heapTokenData.add(dictionary.add(tokens.buffer(), 0, tokens.length()), tokens.begin(), tokens.end());
+
+            tokenData[i]    = mapped ? tokenStore.store(heapTokenData) : heapTokenData;
+            tokenFilters[i] = new TokenFilter(heapTokenData);
+        }
+
+        for (int q = 0; q < QUERIES; q++) {
+            IntArrayList tokenIds = new IntArrayList();
+
+            Tokens tokens = Linguistic.newFilter().reset(SyntheticCorpus.query(random, germanRatio));
+            while (tokens.next()) {
+                int tokenId = dictionary.get(tokens);
+                if (tokenId >= 0) tokenIds.add(tokenId);
+            }
+
+            queries[q] = tokenIds.toArray();
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(dir);
+    }
+
+
+    /** Returns the number of (document, term) hits of the next query. */
+    @Benchmark
+    public int lastPos() {
+        int[] query = queries[next++ % QUERIES];
+
+        int hits = 0;
+        for (TokenData data : tokenData) {
+            for (int tokenId : query) if (data.lastPos(tokenId) != SimpleDoc.NOT_FOUND) hits++;
+        }
+        return hits;
+    }
+
+
+    @Benchmark
+    public int filterThenLastPos() {
+        int[] query = queries[next++ % QUERIES];
+
+        int hits = 0;
+        for (int i = 0; i < tokenData.length; i++) {
+            for (int tokenId : query) if (tokenFilters[i].mayContain(tokenId) && tokenData[i].lastPos(tokenId) != SimpleDoc.NOT_FOUND) hits++;
+        }
+        return hits;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.qaware.mcp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method completing the arguments of an {@link McpPrompt}, e.g. for autocompletion while a user types them.
+ * <p>
+ * The annotation value is the name of the prompt. The method has one parameter annotated with {@link McpParam} per
+ * argument it completes; it is called with the current value of the argument (the other parameters are {@code null})
+ * and returns the suggested values, of which the first {@link #MAX_VALUES} are sent.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * &#64;McpCompletion("explain")
+ * public List&lt;String&gt; completeTerm(&#64;McpParam(name = "term") String term) {
+ *     // implementation
+ * }
+ * </pre>
+ *
+ * @see McpPrompt
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface McpCompletion {
+
+    /** The maximal number of values of a completion allowed by the protocol. */
+    int MAX_VALUES = 100;
+
+    String value(); // the name of the prompt
+
+}
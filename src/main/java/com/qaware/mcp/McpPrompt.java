@@ -0,0 +1,32 @@
+package com.qaware.mcp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as an MCP prompt.
+ * <p>
+ * The method name becomes the prompt name, the annotation value its description, and the parameters annotated with
+ * {@link McpParam} its arguments. The result of the method is returned as the text of a single user message. Arguments
+ * of a prompt can be completed by an {@link McpCompletion} method.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * &#64;McpPrompt("Explains a term of the glossary")
+ * public String explain(&#64;McpParam(name = "term", description = "The term to explain") String term) {
+ *     // implementation
+ * }
+ * </pre>
+ *
+ * @see McpCompletion
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface McpPrompt {
+
+    String value(); // LLM and human-readable description
+
+}
@@ -9,6 +9,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static io.modelcontextprotocol.server.McpServer.sync;
@@ -38,11 +40,13 @@ enum McpSseServlet {
         McpSyncServer server = sync(mcpServerTransportProvider)
                 .serverInfo(serverName, serverVersion)
                 .capabilities(McpTools.SERVER_CAPABILITIES)
+                .completions(newCompletionSpecs(tools))
                 .build();
 
         for (Object tool : tools) {
             LOGGER.info("Registering tools from: {}", tool.getClass().getSimpleName());
             addTool(server, tool);
+            addPrompts(server, tool);
         }
 
         return server;
@@ -56,6 +60,27 @@ enum McpSseServlet {
     }
 
 
+    private static void addPrompts(McpSyncServer mcpSyncServer, Object tool) {
+        Map<Method, McpPrompt> mcpMethods = Reflection.getMethodsWithAnnotations(tool.getClass(), McpPrompt.class);
+
+        mcpMethods.forEach((method, mcpPrompt) -> mcpSyncServer.addPrompt(new McpServerFeatures.SyncPromptSpecification(
+                McpTools.getPrompt(method, mcpPrompt), McpTools.getPromptHandler(tool, method, mcpPrompt))));
+    }
+
+
+    /** Completions can only be passed to the builder, so they are collected from all tools first. */
+    private static List<McpServerFeatures.SyncCompletionSpecification> newCompletionSpecs(Object... tools) {
+        List<McpServerFeatures.SyncCompletionSpecification> specs = new ArrayList<>();
+
+        for (Object tool : tools) {
+            Reflection.getMethodsWithAnnotations(tool.getClass(), McpCompletion.class).forEach((method, mcpCompletion) -> specs.add(
+                    new McpServerFeatures.SyncCompletionSpecification(McpTools.getCompletionReference(mcpCompletion), McpTools.getCompletionHandler(tool, method))));
+        }
+
+        return specs;
+    }
+
+
     private static McpServerFeatures.SyncToolSpecification newToolSpec(Object tool, Method method, McpTool mcpTool) {
         return McpServerFeatures.SyncToolSpecification.builder()
                 .tool(McpTools.getTool(method, mcpTool))
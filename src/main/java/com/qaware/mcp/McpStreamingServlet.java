@@ -3,6 +3,8 @@ package com.qaware.mcp;
 import static io.modelcontextprotocol.server.McpServer.sync;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -39,11 +41,13 @@ enum McpStreamingServlet {
         McpStatelessSyncServer server = sync(transportProvider)
                 .serverInfo(serverName, serverVersion)
                 .capabilities(McpTools.SERVER_CAPABILITIES)
+                .completions(newCompletionSpecs(tools))
                 .build();
 
         for (Object tool : tools) {
             LOGGER.info("Registering tools from: {}", tool.getClass().getSimpleName());
             addTool(server, tool);
+            addPrompts(server, tool);
         }
     }
 
@@ -55,6 +59,27 @@ enum McpStreamingServlet {
     }
 
 
+    private static void addPrompts(McpStatelessSyncServer server, Object tool) {
+        Map<Method, McpPrompt> mcpMethods = Reflection.getMethodsWithAnnotations(tool.getClass(), McpPrompt.class);
+
+        mcpMethods.forEach((method, mcpPrompt) -> server.addPrompt(new McpStatelessServerFeatures.SyncPromptSpecification(
+                McpTools.getPrompt(method, mcpPrompt), McpTools.getPromptHandler(tool, method, mcpPrompt))));
+    }
+
+
+    /** Completions can only be passed to the builder, so they are collected from all tools first. */
+    private static List<McpStatelessServerFeatures.SyncCompletionSpecification> newCompletionSpecs(Object... tools) {
+        List<McpStatelessServerFeatures.SyncCompletionSpecification> specs = new ArrayList<>();
+
+        for (Object tool : tools) {
+            Reflection.getMethodsWithAnnotations(tool.getClass(), McpCompletion.class).forEach((method, mcpCompletion) -> specs.add(
+                    new McpStatelessServerFeatures.SyncCompletionSpecification(McpTools.getCompletionReference(mcpCompletion), McpTools.getCompletionHandler(tool, method))));
+        }
+
+        return specs;
+    }
+
+
     private static McpStatelessServerFeatures.SyncToolSpecification newToolSpec(Object tool, Method method, McpTool mcpTool) {
         return McpStatelessServerFeatures.SyncToolSpecification.builder()
                 .tool(McpTools.getTool(method, mcpTool))
@@ -3,7 +3,9 @@ package com.qaware.mcp;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
 
@@ -15,7 +17,12 @@ import io.modelcontextprotocol.json.jackson3.JacksonMcpJsonMapper;
 import io.modelcontextprotocol.spec.McpSchema;
 import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
 import io.modelcontextprotocol.spec.McpSchema.CallToolResult.Builder;
+import io.modelcontextprotocol.spec.McpSchema.CompleteResult;
+import io.modelcontextprotocol.spec.McpSchema.GetPromptResult;
 import io.modelcontextprotocol.spec.McpSchema.JsonSchema;
+import io.modelcontextprotocol.spec.McpSchema.Prompt;
+import io.modelcontextprotocol.spec.McpSchema.PromptArgument;
+import io.modelcontextprotocol.spec.McpSchema.PromptMessage;
 import io.modelcontextprotocol.spec.McpSchema.Tool;
 import io.modelcontextprotocol.spec.McpSchema.ToolAnnotations;
 import tools.jackson.databind.json.JsonMapper;
@@ -33,6 +40,7 @@ enum McpTools {
             .tools(true)
             .resources(false, false)
             .prompts(false)
+            .completions()
             .build();
 
 
@@ -56,6 +64,66 @@ enum McpTools {
     }
 
 
+    static Prompt getPrompt(Method method, McpPrompt mcpPrompt) {
+        List<PromptArgument> arguments = new ArrayList<>();
+
+        for (Parameter param : method.getParameters()) {
+            McpParam mcpParam = param.getAnnotation(McpParam.class);
+            if (mcpParam == null) {
+                throw new IllegalArgumentException("Parameter " + param.getName() + " missing @McpParam annotation");
+            }
+
+            arguments.add(new PromptArgument(mcpParam.name(), mcpParam.description(), true));
+        }
+
+        return new Prompt(method.getName(), mcpPrompt.value(), arguments);
+    }
+
+
+    static <T> BiFunction<T, McpSchema.GetPromptRequest, GetPromptResult> getPromptHandler(Object tool, Method method, McpPrompt mcpPrompt) {
+        return (mcpSyncServerExchange, request) -> {
+            Object result = Reflection.invokeMethod(method, tool, request.arguments());
+            String text = result instanceof String string ? string : Json.toJson(result);
+
+            return new GetPromptResult(mcpPrompt.value(), List.of(new PromptMessage(McpSchema.Role.USER, new McpSchema.TextContent(text))));
+        };
+    }
+
+
+    static McpSchema.PromptReference getCompletionReference(McpCompletion mcpCompletion) {
+        return new McpSchema.PromptReference(mcpCompletion.value());
+    }
+
+
+    static <T> BiFunction<T, McpSchema.CompleteRequest, CompleteResult> getCompletionHandler(Object tool, Method method) {
+        return (mcpSyncServerExchange, request) -> complete(tool, method, request.argument().name(), request.argument().value());
+    }
+
+
+    @SuppressWarnings({ "unchecked", "java:S1181" })
+    private static CompleteResult complete(Object instance, Method method, String argument, String value) {
+        List<String> values = List.of();
+
+        boolean completes = false;
+        for (Parameter param : method.getParameters()) {
+            McpParam mcpParam = param.getAnnotation(McpParam.class);
+            completes |= mcpParam != null && mcpParam.name().equals(argument);
+        }
+
+        try {
+            if (completes) values = (List<String>) Reflection.invokeMethod(method, instance, Collections.singletonMap(argument, value));
+
+        } catch (Throwable throwable) {
+            LOGGER.error("Completion failed: " + method.getName() + " " + argument, throwable);
+        }
+
+        int total = values.size();
+        values = values.subList(0, Math.min(total, McpCompletion.MAX_VALUES));
+
+        return new CompleteResult(new CompleteResult.CompleteCompletion(values, total, total > values.size()));
+    }
+
+
     @SuppressWarnings("java:S1181")
     private static CallToolResult invoke(Object instance, Method method, Map<String, Object> parameters) {
         try {
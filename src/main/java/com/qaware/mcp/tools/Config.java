@@ -23,6 +23,23 @@ public enum Config {
 
     public static final String MAX_CONTENT = "mcp-kb-max-content";
     public static final String ROOT = "mcp-kb-root";
+    public static final String WATCH = "mcp-kb-watch";
+    public static final String INVERTED_INDEX = "mcp-kb-inverted-index";
+    public static final String SPARSE_SCORES = "mcp-kb-sparse-scores";
+    public static final String INDEX_FILE = "mcp-kb-index-file";
+    public static final String MMAP_DIR = "mcp-kb-mmap-dir";
+    public static final String CACHE_ENTRIES = "mcp-kb-cache-entries";
+    public static final String CACHE_MEMORY = "mcp-kb-cache-memory";
+    public static final String SMOOTHING = "mcp-kb-smoothing";
+    public static final String SHARDS = "mcp-kb-shards";
+    public static final String DICTIONARY_COMPACTION = "mcp-kb-dictionary-compaction";
+    public static final String SHARD_SERVERS = "mcp-kb-shard-servers";
+    public static final String SHARD_PORT = "mcp-kb-shard-port";
+    public static final String SHARD_HOST = "mcp-kb-shard-host";
+    public static final String EXTRACTION_CACHE_DIR = "mcp-kb-extraction-cache-dir";
+    public static final String EXTRACTION_CACHE_SIZE = "mcp-kb-extraction-cache-size";
+    public static final String SLURP_FAST = "mcp-slurp-fast";
+    public static final String SLURP_CACHE_ENTRIES = "mcp-slurp-cache-entries";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Config.class);
 
@@ -65,6 +82,13 @@ public enum Config {
     }
 
 
+    /** Returns the configured boolean value for the given key (after normalization) or {@code fallback} if the key is not set. */
+    public static boolean getBoolean(String key, boolean fallback) {
+        String value = get(key);
+        return value == null ? fallback : Boolean.parseBoolean(value.trim());
+    }
+
+
     private static String normalizeKey(Object key) {
         if (key == null) {
             return null;
@@ -0,0 +1,160 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers queries from several {@link ShardServer}s, each serving a part of the knowledge base: first the top scores of
+ * all servers are merged into the global threshold, then each server returns the passages of its positions above it.
+ * So the answer selects at most {@code limit} positions in total, the positions scored above the threshold are the
+ * ones a single corpus with all documents would select. Positions scored equal to the threshold are given to the
+ * servers in their order, and the passages are concatenated in server order: document ids are local to a server.
+ * Only if the roots are split over the servers in the order a single corpus reads them, the answer equals the one of
+ * that corpus, otherwise it has the same passages in another order and may select other ties.
+ * <p>
+ * The servers are queried concurrently. A server that fails or times out is logged and left out of the answer.
+ * <p>
+ * <b>Thread Safety:</b> Thread-safe.
+ */
+final class Coordinator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Coordinator.class);
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final String[] servers;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+
+
+    /** @param servers the base URLs of the shard servers, e.g. {@code http://kb-1:8081} */
+    Coordinator(String... servers) {
+        this.servers = Arrays.stream(servers)
+                .map(String::trim)
+                .filter(server -> ! server.isEmpty())
+                .map(server -> server.endsWith("/") ? server.substring(0, server.length() - 1) : server)
+                .toArray(String[]::new);
+    }
+
+
+    /** @throws IllegalArgumentException if the query is too long, see {@link ShardServer#MAX_QUERY_BYTES} */
+    String getPassages(String query, int limit) {
+        long startNanoTime = System.nanoTime();
+
+        byte[] scoresRequest = request(query, limit, Float.NaN, 0);
+
+        List<CompletableFuture<byte[]>> scoresResponses = new ArrayList<>(servers.length);
+        for (String server : servers) scoresResponses.add(post(server + ShardServer.SCORES, scoresRequest));
+
+        float[][] scores = new float[servers.length][];
+        TopScores topScores = new TopScores().reset(limit);
+
+        for (int s = 0; s < servers.length; s++) {
+            byte[] response = join(scoresResponses.get(s), servers[s]);
+            if (response == null) continue;
+
+            try {
+                scores[s] = ShardServer.readHistogram(new DataInputStream(new ByteArrayInputStream(response)), limit);
+            } catch (IOException ioe) {
+                LOGGER.warn("Invalid scores from shard server {}: {}", servers[s], ioe.toString());
+                continue;
+            }
+
+            for (float score : scores[s]) topScores.add(score);
+        }
+
+        float threshold = topScores.threshold();
+        int ties = topScores.ties();
+
+        List<CompletableFuture<byte[]>> passagesResponses = new ArrayList<>(servers.length);
+        for (int s = 0; s < servers.length; s++) {
+            passagesResponses.add(null);
+            if (scores[s] == null || scores[s].length == 0 || scores[s][0] < threshold) continue;
+
+            int serverTies = 0;
+            for (float score : scores[s]) if (score == threshold) serverTies++;
+            serverTies = Math.min(serverTies, ties);
+            ties -= serverTies;
+
+            passagesResponses.set(s, post(servers[s] + ShardServer.PASSAGES, request(query, limit, threshold, serverTies)));
+        }
+
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int s = 0; s < servers.length; s++) {
+            byte[] response = passagesResponses.get(s) == null ? null : join(passagesResponses.get(s), servers[s]);
+            if (response != null) stringBuilder.append(new String(response, StandardCharsets.UTF_8));
+        }
+
+        LOGGER.info("{} --> {} {} from {} shard servers {}ms", query, limit, stringBuilder.length(), servers.length, (System.nanoTime() - startNanoTime) / 1_000_000f);
+
+        return stringBuilder.toString();
+    }
+
+
+    /** Encodes the request of {@link ShardServer#SCORES}, or of {@link ShardServer#PASSAGES} if there is a threshold. */
+    private static byte[] request(String query, int limit, float threshold, int ties) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            ShardServer.writeQuery(query, out);
+            out.writeInt(limit);
+
+            if (! Float.isNaN(threshold)) {
+                out.writeFloat(threshold);
+                out.writeInt(ties);
+            }
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        return bytes.toByteArray();
+    }
+
+
+    private CompletableFuture<byte[]> post(String url, byte[] body) {
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (response.statusCode() != 200) throw new UncheckedIOException(new IOException("HTTP " + response.statusCode() + " from " + url));
+            return response.body();
+        });
+    }
+
+
+    /** Returns the response, {@code null} if the request failed. */
+    private static byte[] join(CompletableFuture<byte[]> response, String server) {
+        try {
+            return response.join();
+
+        } catch (CompletionException e) {
+            LOGGER.warn("Shard server {} failed: {}", server, e.getCause().toString());
+            return null;
+        }
+    }
+
+}
@@ -1,93 +1,372 @@
 package com.qaware.mcp.tools.knowledge;
 
+import com.qaware.mcp.tools.knowledge.nlp.Chars;
 import com.qaware.mcp.tools.knowledge.nlp.Tokens;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+import com.carrotsearch.hppc.FloatArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
 
 class Corpus {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Corpus.class);
 
+    /** Size of the chunks returned by {@link #getAllChunks()} in chars. */
+    static final int CHUNK_SIZE = 1 << 16;
+
     private static final Recycler<Tokens> TOKENS_RECYCLER = new Recycler<>(Linguistic::newFilter, null);
 
-    private final Dictionary dictionary = new Dictionary();
+    /** Marks a query term matching all terms starting with it, like {@code kafka*}. */
+    private static final char PREFIX = '*';
+
+    /** The maximal number of terms a prefix term of a query is expanded to. */
+    private static final int MAX_EXPANSIONS = 64;
+
+    /** How many dictionary terms {@link #complete(String, int)} looks at per completion it returns. */
+    private static final int COMPLETION_TERMS_PER_RESULT = 4;
+
+    /** How long the index file is written after a change, so a burst of changes is written once. */
+    private static final Duration INDEX_FILE_DELAY = Duration.ofSeconds(5);
+
+    /** Replaced by {@link #compactDictionary()}, queries use the one of their snapshot. */
+    private Dictionary dictionary = new Dictionary();
 
     private final Set<String> seen = new HashSet<>();
 
     private final Map<String, SimpleDoc> docs = new TreeMap<>();
 
-    private final Consumer<Consumer<Location>> scanner;
+    private final Scanner scanner;
+
+    private final AtomicInteger docIds = new AtomicInteger();
+
+    private final IngestionPipeline ingestionPipeline = new IngestionPipeline();
+
+    /** Serializes the updates. Not a monitor, which would pin a virtual thread waiting for the ingestion pipeline. */
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private boolean invertedIndex;
+
+    private Shard[] shards = { new Shard(false) };
+
+    /** The shards whose documents changed since the last snapshot. */
+    private boolean[] changedShards = new boolean[1];
+
+    /** Scores the shards of a query concurrently, {@code null} for a single shard. */
+    private ExecutorService shardExecutor;
+
+    private boolean sparseScores;
+
+    private Smoothing smoothing = Smoothing.KERNEL;
+
+    private TokenStore tokenStore;
+
+    private Path indexFile;
+
+    private ResultCache resultCache;
+
+    private boolean indexFileRead;
+
+    private int modCount;
+
+    private int savedModCount;
+
+    /** The latest snapshot not yet written to the index file, see {@link #writeIndexFile()}. */
+    private final AtomicReference<Snapshot> unsavedSnapshot = new AtomicReference<>();
+
+    /** Serializes the writes of the index file. */
+    private final ReentrantLock indexFileLock = new ReentrantLock();
+
+    private long generation;
+
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new SimpleDoc[0], new Shard.Snapshot[0], dictionary, shards, 0);
+
+    private boolean changed;
+
+    /** Compacts the dictionary when fewer of its terms are used by a document, see {@link #dictionaryCompaction(int)}. */
+    private int livePercent;
+
+    /** The number of documents per token id, only counted with {@link #livePercent}. */
+    private int[] docFreqs = {};
+
+    /** The number of token ids used by a document. */
+    private int liveTerms;
+
+
+    /** The documents of the corpus at one point in time, sorted by id. Immutable. */
+    private static final class Snapshot {
+
+        final String[] ids;
+
+        final SimpleDoc[] docs;
+
+        /** The documents of each shard, an unchanged shard keeps its snapshot. */
+        final Shard.Snapshot[] shards;
+
+        /** The dictionary the token ids of the documents refer to. */
+        final Dictionary dictionary;
+
+        /** Scores {@link #shards}, their inverted indexes refer to {@link #dictionary} as well. */
+        final Shard[] scorers;
+
+        /** Total length of all documents in chars. */
+        final int length;
+
+        /** Incremented for each snapshot, i.e. for each change of the documents. */
+        final long generation;
+
+
+        Snapshot(String[] ids, SimpleDoc[] docs, Shard.Snapshot[] shards, Dictionary dictionary, Shard[] scorers, long generation) {
+            this.ids        = ids;
+            this.docs       = docs;
+            this.shards     = shards;
+            this.dictionary = dictionary;
+            this.scorers    = scorers;
+            this.generation = generation;
+
+            int sum = 0;
+            for (Shard.Snapshot shard : shards) sum += shard.length;
+            length = sum;
+        }
+
+    }
 
 
     /**
      * Create a Corpus that is populated via a pluggable scanner.
      *
-     * Scanner contract (important):
-     * - The provided {@code scanner} MUST invoke the given consumer only during the execution of the
-     *   call to {@code scanner.accept(...)}, i.e. all calls to {@code consumer.accept(location)} must
-     *   happen-before {@code scanner.accept(...)} returns. The scanner is free to perform work
-     *   asynchronously and may dispatch consumer calls from multiple threads concurrently while
-     *   {@code scanner.accept(...)} is executing.
-     * - The scanner MUST NOT schedule callbacks that execute after {@code scanner.accept(...)} has returned.
-     *   Invocations that occur outside the accept call are disallowed and may lead to unpredictable
-     *   behavior.
+     * Scanner contract (important): see {@link Scanner#scan(Consumer)}. In short, all calls to the consumer must
+     * happen-before {@code scan(...)} returns; they may be dispatched from multiple threads concurrently while
+     * {@code scan(...)} is executing. Callbacks after {@code scan(...)} has returned are disallowed and may lead to
+     * unpredictable behavior.
      *
      * Concurrency notes:
-     * - {@link Corpus} uses some internal synchronization (synchronized methods and synchronized blocks)
-     *   but is not designed as a fully concurrent data structure for arbitrary concurrent mutation from
-     *   external threads outside the accept window. Accepting concurrent calls during the accept window
-     *   is allowed, but callers should be aware of potential contention and performance implications.
+     * - Updates (scanning and indexing) are serialized. Each one publishes an immutable {@link Snapshot} of the
+     *   documents when done.
+     * - New and modified locations are loaded, parsed and tokenized by an {@link IngestionPipeline}; the update waits
+     *   for it. Locations must therefore stay usable after {@code scan(...)} returned.
+     * - Queries score such a snapshot without holding a lock. All per query state lives in a recycled
+     *   {@link Scores} instance, so any number of queries can run concurrently.
      *
-     * @param scanner a Consumer that accepts a Location-consumer and must invoke it (possibly concurrently)
-     *                only during the call to {@code scanner.accept(...)}
+     * @param scanner reports all locations (full scan) or only the changed ones (incremental scan) on each query
      */
-    Corpus(Consumer<Consumer<Location>> scanner) {
+    Corpus(Scanner scanner) {
         this.scanner = scanner;
     }
 
 
-    synchronized String getPassages(String query, int limit) {
+    /**
+     * Enables or disables the corpus level {@link InvertedIndex}. With the index, scoring a query term only touches the
+     * documents containing it instead of looking it up in every document. Must be set before the first query.
+     */
+    Corpus invertedIndex(boolean enabled) {
+        invertedIndex = enabled;
+        shards = newShards(shards.length);
+        return this;
+    }
+
+
+    /**
+     * Partitions the documents into {@code count} {@link Shard}s by the hash of their ids. A query scores the shards
+     * concurrently on a dedicated executor, one thread per shard, and merges their top scores. Results are identical.
+     * {@code 1} (the default) scores a single shard on the common pool. Must be set before the first query.
+     */
+    Corpus shards(int count) {
+        shards        = newShards(Math.max(1, count));
+        changedShards = new boolean[shards.length];
+        shardExecutor = shards.length == 1 ? null : IngestionPipeline.newPool("kb-shard-", shards.length);
+        return this;
+    }
+
+
+    /**
+     * Enables or disables sparse scores: only the positions around the hits of a query are scored, smoothed and
+     * thresholded, so a query costs O(hits) instead of O(corpus tokens). Results are identical. Best combined with
+     * {@link #invertedIndex(boolean)}. Must be set before the first query.
+     */
+    Corpus sparseScores(boolean enabled) {
+        sparseScores = enabled;
+        return this;
+    }
+
+
+    /**
+     * Rebuilds the {@link Dictionary} with the terms still used by a document once fewer than {@code livePercent} percent
+     * of its terms are, so terms of deleted and rewritten files do not accumulate. The documents and inverted indexes
+     * are remapped to the new token ids and published with the next snapshot. {@code 0} (the default) never compacts.
+     * Ignored with a {@link #tokenStore(String)}: it never reuses space, so every compaction would copy the token data of
+     * all documents into new mapped segments. Must be set before the first query.
+     */
+    Corpus dictionaryCompaction(int percent) {
+        livePercent = percent;
+        return this;
+    }
+
+
+    /** Selects how the scores of the hits are spread to their neighborhood, see {@link Smoothing}. */
+    Corpus smoothing(Smoothing smoothing) {
+        this.smoothing = smoothing;
+        return this;
+    }
+
+
+    /**
+     * Keeps the token data of the documents in memory-mapped files in the given directory instead of on the heap, see
+     * {@link TokenStore}. {@code null} keeps them on the heap. Must be set before the first query.
+     */
+    Corpus tokenStore(String dir) {
+        tokenStore = dir == null ? null : new TokenStore(Path.of(dir));
+        return this;
+    }
+
+
+    /**
+     * Persists the corpus in the given {@link IndexFile} a few seconds after each update, in the background, and restores
+     * it on the first query, so only files changed in the meantime are re-indexed after a restart. {@code null} disables
+     * persistence.
+     */
+    Corpus indexFile(String fileName) {
+        indexFile = fileName == null ? null : Path.of(fileName);
+        return this;
+    }
+
+
+    /**
+     * Caches up to {@code maxEntries} query results using at most about {@code maxBytes} of memory, see
+     * {@link ResultCache}. {@code 0} entries disables caching. Must be set before the first query.
+     */
+    Corpus resultCache(int maxEntries, long maxBytes) {
+        resultCache = maxEntries > 0 && maxBytes > 0 ? new ResultCache(maxEntries, maxBytes) : null;
+        return this;
+    }
+
+
+    String getPassages(String query, int limit) {
         long startNanoTime = System.nanoTime();
 
-        updateCorpus();
+        Snapshot current = updateCorpus();
 
         startNanoTime = measure(startNanoTime, "scan");
 
-        FloatHistogram floatHistogram = new FloatHistogram();
+        ResultCache.Key key = resultCache == null ? null : new ResultCache.Key(hashes(query), limit, current.generation);
+        if (key != null) {
+            String result = resultCache.get(key);
 
-        docs.values().forEach(SimpleDoc::resetScores);
-
-        startNanoTime = measure(startNanoTime, "clear");
+            if (result != null) {
+                measure(startNanoTime, "🟢 " + query + " --> " + limit + " " + result.length() + " cached, " + resultCache);
+                return result;
+            }
+        }
 
-        score(query);
+        Shard.Result[] results = score(current, query, limit);
         startNanoTime = measure(startNanoTime, "score");
 
-        docs.values().parallelStream().forEach(SimpleDoc::smooth);
-        docs.values().forEach(doc -> doc.update(floatHistogram));
-
         // possible extension: inspect the top 1% passages and extract additional tokens from them,
         // which can then be re-scored to implement automatic query expansion
 
-        float threshold = Math.max(floatHistogram.getThreshold(limit), 0.00001f); // minimal threshold to avoid fetching everything
+        TopScores topScores = merge(results, limit);
+
+        topScores.threshold();
         startNanoTime = measure(startNanoTime, "threshold");
 
-        int total = 1;
+        String result = passages(current, results, topScores, query, limit, startNanoTime);
+
+        if (key != null) resultCache.put(key, result);
+
+        return result;
+    }
+
+
+    /**
+     * First step of a query distributed over several corpora, see {@link Coordinator}: returns the top scores of this
+     * corpus, to be merged with the top scores of the others.
+     */
+    TopScores getTopScores(String query, int limit) {
+        Snapshot current = updateCorpus();
+
+        Shard.Result[] results = score(current, query, limit);
+        TopScores topScores = merge(results, limit);
+
+        for (int s = 0; s < results.length; s++) current.scorers[s].recycle(results[s]);
+
+        return topScores;
+    }
+
+
+    /**
+     * Second step of a distributed query: returns the passages of the positions scored above the merged
+     * {@code threshold} and of the first {@code ties} positions scored equal to it. Scores the snapshot of the first
+     * step again (unless another query updated the corpus meanwhile), so the same positions are selected.
+     */
+    String getPassages(String query, int limit, float threshold, int ties) {
+        long startNanoTime = System.nanoTime();
+
+        Snapshot current = snapshot;
+
+        Shard.Result[] results = score(current, query, limit);
+        startNanoTime = measure(startNanoTime, "score");
+
+        return passages(current, results, new TopScores().reset(threshold, ties), query, limit, startNanoTime);
+    }
+
+
+    private static TopScores merge(Shard.Result[] results, int limit) {
+        TopScores topScores = new TopScores().reset(limit);
+        for (Shard.Result result : results) topScores.addAll(result.topScores);
+        return topScores;
+    }
+
+
+    /** Appends the passages of the selected scores and recycles the results. */
+    private String passages(Snapshot current, Shard.Result[] results, TopScores topScores, String query, int limit, long startNanoTime) {
+        float threshold = topScores.threshold();
+
+        int total = 1 + current.length;
         int sum = 1;
         StringBuilder stringBuilder = new StringBuilder();
-        for (Map.Entry<String, SimpleDoc> entry : docs.entrySet()) {
-            SimpleDoc simpleDoc = entry.getValue();
 
-            simpleDoc.append(stringBuilder, threshold, entry.getKey());
-            for (float score : simpleDoc.scores) if (score > 0) { sum += simpleDoc.length(); break; }
-            total += simpleDoc.length();
+        // gather the documents of all shards in id order, like a single shard would
+        int[] next = new int[results.length];
+        for (int s; (s = nextShard(results, next)) >= 0;) {
+            Shard.Result result = results[s];
+
+            int i = result.hitDocs[next[s]++];
+            SimpleDoc simpleDoc = result.snapshot.docs[i];
+
+            if (result.scores.maxScore(i) >= threshold) result.scores.append(i, simpleDoc, stringBuilder, topScores, result.snapshot.ids[i]);
+            if (result.scores.hasHits(i)) sum += simpleDoc.length();
         }
 
+        for (int s = 0; s < results.length; s++) current.scorers[s].recycle(results[s]);
+
         String result = stringBuilder.toString();
 
         measure(startNanoTime, "paragraphs");
@@ -98,67 +377,527 @@ class Corpus {
     }
 
 
-    synchronized String getAll() {
-        updateCorpus();
+    /** Returns the number of terms in the dictionary, including the ones no longer used until it is compacted. */
+    int dictionarySize() {
+        return snapshot.dictionary.size();
+    }
 
-        StringBuilder stringBuilder = new StringBuilder();
 
-        for (Map.Entry<String, SimpleDoc> entry : docs.entrySet()) {
-            SimpleDoc simpleDoc = entry.getValue();
-            simpleDoc.append(stringBuilder, 0, simpleDoc.scores.length, entry.getKey());
+    /**
+     * Returns up to {@code max} completions of the last word of the text: the text with the word extended to a word of
+     * the documents starting with it, as written there. The typed text is kept as it is. Only looks at the last
+     * snapshot, so it does not wait for a scan.
+     */
+    List<String> complete(String text, int max) {
+        Snapshot current = snapshot;
+
+        // the longest alternative of the last word, the others are stems of it
+        String term = null;
+        int begin = text.length();
+
+        Tokens tokens = TOKENS_RECYCLER.get().reset(text);
+        while (tokens.next()) {
+            if (tokens.end() != text.length() || term != null && term.length() >= tokens.length()) continue;
+
+            term  = new String(tokens.buffer(), 0, tokens.length());
+            begin = tokens.begin();
         }
+        TOKENS_RECYCLER.recycle(tokens);
+
+        if (term == null) return List.of();
+
+        String word = text.substring(begin);
 
-        return stringBuilder.toString();
+        // the terms are normalized and stemmed, several may stand for the same word, so more than max are looked at
+        Set<String> completions = new LinkedHashSet<>();
+        for (int tokenId : current.dictionary.startingWith(term, (int) Math.min((long) max * COMPLETION_TERMS_PER_RESULT, Integer.MAX_VALUE))) {
+            if (completions.size() == max) break;
+
+            String surface = surface(current.docs, tokenId);
+            if (surface != null && surface.length() > word.length() && surface.regionMatches(true, 0, word, 0, word.length())) {
+                completions.add(text + surface.substring(word.length()));
+            }
+        }
+        return new ArrayList<>(completions);
     }
 
 
-    private void updateCorpus() {
-        scanner.accept(this::addLocation);
-        docs.keySet().stream().filter(x -> ! seen.contains(x)).forEach(x -> LOGGER.debug("DEL: {}", x));
-        docs.keySet().retainAll(seen);
+    /** Returns the word of the first document containing the token, as written there, or null if none contains it. */
+    private static String surface(SimpleDoc[] docs, int tokenId) {
+        for (SimpleDoc doc : docs) {
+            int pos = doc.lastPos(tokenId);
+            if (pos != SimpleDoc.NOT_FOUND) return doc.word(pos).toString();
+        }
+        return null;
+    }
+
+
+    String getAll() {
+        return String.join("", getAllChunks());
+    }
+
+
+    /**
+     * Returns the text of all documents in chunks of about {@link #CHUNK_SIZE} chars (a larger document is a chunk of its
+     * own), each up to its last token; documents without tokens are left out. A chunk is only built when iterated, so the
+     * output is never held in one piece. The snapshot is taken when this method is called.
+     */
+    Iterable<String> getAllChunks() {
+        Snapshot current = updateCorpus();
+
+        return chunks(current.docs.length, (stringBuilder, i) -> {
+            SimpleDoc simpleDoc = current.docs[i];
+            if (simpleDoc.size() > 0) simpleDoc.append(stringBuilder, 0, simpleDoc.size(), current.ids[i]);
+        });
+    }
+
+
+    /**
+     * Returns {@code count} documents, appended by {@code appender}, in chunks of about {@link #CHUNK_SIZE} chars. A chunk
+     * is only built when iterated.
+     */
+    static Iterable<String> chunks(int count, ObjIntConsumer<StringBuilder> appender) {
+        return () -> new Iterator<>() {
+
+            private int next;
+
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+
+            @Override
+            public String next() {
+                if (! hasNext()) throw new NoSuchElementException();
+
+                StringBuilder stringBuilder = new StringBuilder();
+                while (next < count && stringBuilder.length() < CHUNK_SIZE) appender.accept(stringBuilder, next++);
+
+                return stringBuilder.toString();
+            }
+        };
+    }
+
+
+    /** Scans for changes and returns the resulting snapshot. Updates are serialized, queries are not. */
+    private Snapshot updateCorpus() {
+        updateLock.lock();
+        try {
+            return update();
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+
+    private Snapshot update() {
+        if (indexFile != null && ! indexFileRead) readIndexFile();
+
+        int startModCount = modCount;
+
+        boolean full = scanner.scan(this::addLocation);
+        ingestionPipeline.await();
+        scanner.retry(ingestionPipeline.drainFailed());
+
+        if (full) {
+            docs.keySet().stream().filter(x -> ! seen.contains(x)).toList().forEach(this::remove);
+        }
         seen.clear();
+
+        if (modCount != startModCount) LOGGER.info("Ingestion: {}", ingestionPipeline);
+
+        if (compacts() && liveTerms * 100L < (long) livePercent * dictionary.size()) compactDictionary();
+
+        if (changed || snapshot.scorers != shards) {
+            changed  = false;
+            snapshot = newSnapshot();
+        }
+
+        if (indexFile != null && modCount != savedModCount) scheduleIndexFile();
+
+        return snapshot;
+    }
+
+
+    private void readIndexFile() {
+        indexFileRead = true;
+
+        long startNano = System.nanoTime();
+
+        // into a fresh dictionary, a file failing halfway must not leave words with wrong ids behind
+        Dictionary readDictionary = new Dictionary();
+        Map<String, SimpleDoc> read;
+
+        try {
+            read = IndexFile.read(indexFile, readDictionary, docIds::getAndIncrement, tokenStore);
+
+        } catch (RuntimeException e) { // a corrupt file may fail anywhere, e.g. with a negative array size
+            LOGGER.warn("Can not read index file {}, discarding it and indexing from scratch: {}", indexFile, e.toString());
+            deleteIndexFile();
+            return;
+        }
+
+        dictionary = readDictionary;
+
+        read.forEach((id, simpleDoc) -> {
+            InvertedIndex index = invertedIndex(id);
+            if (index != null) index.add(simpleDoc);
+            put(id, simpleDoc);
+        });
+
+        savedModCount = modCount;
+
+        LOGGER.info("Read {} documents from {} in {}ms", read.size(), indexFile, (System.nanoTime() - startNano) / 1_000_000f);
+    }
+
+
+    private void deleteIndexFile() {
+        try {
+            Files.deleteIfExists(indexFile);
+        } catch (IOException ioe) {
+            LOGGER.warn("Can not delete index file {}: {}", indexFile, ioe.toString());
+        }
+    }
+
+
+    /**
+     * Writes the current snapshot to the index file after {@link #INDEX_FILE_DELAY} on a virtual thread, so queries do not
+     * wait for it. A snapshot published meanwhile replaces it, and only the latest one is written.
+     */
+    private void scheduleIndexFile() {
+        savedModCount = modCount;
+
+        if (unsavedSnapshot.getAndSet(snapshot) != null) return; // already scheduled
+
+        Thread.ofVirtual().name("kb-index-file").start(() -> {
+            try {
+                Thread.sleep(INDEX_FILE_DELAY);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+
+            writeIndexFile();
+        });
+    }
+
+
+    /** Writes the latest snapshot not written yet, if any. Called by the scheduled writer, and by tests to flush. */
+    void writeIndexFile() {
+        indexFileLock.lock();
+        try {
+            Snapshot unsaved = unsavedSnapshot.getAndSet(null);
+            if (unsaved == null) return;
+
+            long startNano = System.nanoTime();
+
+            Map<String, SimpleDoc> unsavedDocs = new LinkedHashMap<>();
+            for (int i = 0; i < unsaved.docs.length; i++) unsavedDocs.put(unsaved.ids[i], unsaved.docs[i]);
+
+            IndexFile.write(indexFile, unsaved.dictionary, unsavedDocs);
+
+            LOGGER.info("Wrote {} documents to {} in {}ms", unsavedDocs.size(), indexFile, (System.nanoTime() - startNano) / 1_000_000f);
+
+        } catch (UncheckedIOException e) {
+            LOGGER.warn("Can not write index file {}: {}", indexFile, e.toString());
+
+        } finally {
+            indexFileLock.unlock();
+        }
     }
 
 
     private void addLocation(Location location) {
         String id = location.getId();
 
+        long lastMod = location.getVersion();
+        if (lastMod == Location.DELETED) {
+            remove(id);
+            return;
+        }
+
         synchronized (seen) {
             seen.add(id);
         }
 
-        long lastMod = location.getVersion();
-
         SimpleDoc simpleDoc = get(id);
         if (simpleDoc != null && simpleDoc.lastMod() == lastMod) return;
 
+        ingestionPipeline.submit(location, chars -> index(id, lastMod, chars), reader -> index(id, lastMod, reader));
+    }
+
+
+    /** Tokenizes the chars of a new or modified location, runs in the index stage of the {@link IngestionPipeline}. */
+    private void index(String id, long lastMod, CharSequence chars) {
         long startNano = System.nanoTime();
 
-        Tokens tokens = TOKENS_RECYCLER.get().reset(location.getChars());
-        simpleDoc = new SimpleDoc(lastMod, dictionary, tokens);
+        Tokens tokens = TOKENS_RECYCLER.get().reset(chars);
+        SimpleDoc simpleDoc = new SimpleDoc(docIds.getAndIncrement(), lastMod, dictionary, tokens, tokenStore);
         TOKENS_RECYCLER.recycle(tokens);
+
+        add(id, simpleDoc, startNano);
+    }
+
+
+    /** Like {@link #index(String, long, CharSequence)}, tokenizing while reading a location too large to be held as chars. */
+    private void index(String id, long lastMod, Reader reader) {
+        long startNano = System.nanoTime();
+
+        Tokens tokens = TOKENS_RECYCLER.get();
+        SimpleDoc simpleDoc = new SimpleDoc(docIds.getAndIncrement(), lastMod, dictionary, tokens, reader, tokenStore);
+        TOKENS_RECYCLER.recycle(tokens);
+
+        add(id, simpleDoc, startNano);
+    }
+
+
+    private void add(String id, SimpleDoc simpleDoc, long startNano) {
+        InvertedIndex index = invertedIndex(id);
+        if (index != null) index.add(simpleDoc);
+
         LOGGER.info("ADD/MOD: {} {}ms", id, (System.nanoTime() - startNano) / 1_000_000f);
 
         put(id, simpleDoc);
     }
 
 
-    private void score(String chars) {
-        Tokens tokens = TOKENS_RECYCLER.get().reset(chars);
+    /** Scores the query in all shards of the snapshot, concurrently if there are several. */
+    private Shard.Result[] score(Snapshot current, String query, int limit) {
+        IntArrayList tokenIds = new IntArrayList();
+        FloatArrayList weights = new FloatArrayList();
+
+        Tokens tokens = TOKENS_RECYCLER.get().reset(query);
 
         while (tokens.next()) {
+            if (isPrefix(query, tokens)) {
+                int[] expansions = current.dictionary.startingWith(new String(tokens.buffer(), 0, tokens.length()), MAX_EXPANSIONS);
+
+                LOGGER.info("{}{} {} terms", tokens, PREFIX, expansions.length);
+
+                for (int tokenId : expansions) {
+                    if (tokenIds.contains(tokenId)) continue; // also found by another alternative of the word
+
+                    tokenIds.add(tokenId);
+                    weights.add(weight(Linguistic.getDF(Chars.hash(current.dictionary.get(tokenId)))));
+                }
+                continue;
+            }
+
             int df = Linguistic.getDF(tokens.hash());
-            float score = (float) (5 * Math.log(3_000_000.0 / (1 + df)));
+            float score = weight(df);
 
             LOGGER.info("{} {} {}", tokens, df, score);
 
-            int tokenId = dictionary.get(tokens);
-            if (tokenId >= 0) {
-                docs.values().parallelStream().forEach(doc -> doc.addScore(tokenId, score));
+            int tokenId = current.dictionary.get(tokens);
+            if (tokenId < 0) continue;
+
+            tokenIds.add(tokenId);
+            weights.add(score);
+        }
+
+        TOKENS_RECYCLER.recycle(tokens);
+
+        int[] ids = tokenIds.toArray();
+        float[] scores = weights.toArray();
+
+        Shard.Result[] results = new Shard.Result[current.shards.length];
+
+        if (shardExecutor == null) {
+            for (int s = 0; s < results.length; s++) results[s] = current.scorers[s].score(current.shards[s], ids, scores, limit, sparseScores, smoothing, true);
+            return results;
+        }
+
+        List<Callable<Shard.Result>> tasks = new ArrayList<>();
+        for (int s = 0; s < results.length; s++) {
+            int shard = s;
+            tasks.add(() -> current.scorers[shard].score(current.shards[shard], ids, scores, limit, sparseScores, smoothing, false));
+        }
+
+        try {
+            List<Future<Shard.Result>> futures = shardExecutor.invokeAll(tasks);
+            for (int s = 0; s < results.length; s++) results[s] = futures.get(s).get();
+            return results;
+
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ie);
+
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+
+    /** The query score of a term: the rarer, the higher. */
+    private static float weight(int df) {
+        return (float) (5 * Math.log(3_000_000.0 / (1 + df)));
+    }
+
+
+    /** Returns true if the token of the query is followed by {@link #PREFIX}. */
+    private static boolean isPrefix(String query, Tokens tokens) {
+        return tokens.end() < query.length() && query.charAt(tokens.end()) == PREFIX;
+    }
+
+
+    /** Returns the shard whose next hit document has the lowest id, -1 if all are done. */
+    private static int nextShard(Shard.Result[] results, int[] next) {
+        int best = -1;
+
+        for (int s = 0; s < results.length; s++) {
+            if (next[s] == results[s].hitDocs.length) continue;
+
+            if (best < 0 || id(results[s], next[s]).compareTo(id(results[best], next[best])) < 0) best = s;
+        }
+
+        return best;
+    }
+
+
+    private static String id(Shard.Result result, int next) {
+        return result.snapshot.ids[result.hitDocs[next]];
+    }
+
+
+    /** Creates a snapshot of the documents, only the snapshots of changed shards are rebuilt. */
+    private Snapshot newSnapshot() {
+        String[] ids = docs.keySet().toArray(new String[0]);
+        SimpleDoc[] all = docs.values().toArray(new SimpleDoc[0]);
+
+        Shard.Snapshot[] shardSnapshots = snapshot.shards.length == shards.length ? snapshot.shards.clone() : new Shard.Snapshot[shards.length];
+
+        for (int s = 0; s < shards.length; s++) {
+            if (shardSnapshots[s] != null && ! changedShards[s]) continue;
+
+            changedShards[s] = false;
+
+            if (shards.length == 1) {
+                shardSnapshots[s] = new Shard.Snapshot(ids, all, invertedIndex);
+            } else {
+                List<String> shardIds = new ArrayList<>();
+                List<SimpleDoc> shardDocs = new ArrayList<>();
+
+                for (int i = 0; i < ids.length; i++) {
+                    if (shard(ids[i]) != s) continue;
+                    shardIds.add(ids[i]);
+                    shardDocs.add(all[i]);
+                }
+
+                shardSnapshots[s] = new Shard.Snapshot(shardIds.toArray(new String[0]), shardDocs.toArray(new SimpleDoc[0]), invertedIndex);
             }
+
+            InvertedIndex index = shards[s].invertedIndex;
+            if (index != null && index.needsCompaction()) index.compact();
+        }
+
+        return new Snapshot(ids, all, shardSnapshots, dictionary, shards, ++generation);
+    }
+
+
+    /**
+     * Replaces the dictionary by one with the terms used by the documents only, the most frequent first, and remaps all
+     * documents and inverted indexes to it. Queries still running on the current snapshot keep the old ones.
+     */
+    private void compactDictionary() {
+        long startNano = System.nanoTime();
+        int oldSize = dictionary.size();
+
+        // by descending document frequency, then by token id
+        long[] order = new long[liveTerms];
+        int count = 0;
+        for (int tokenId = 0; tokenId < docFreqs.length; tokenId++) {
+            if (docFreqs[tokenId] > 0) order[count++] = (long) (Integer.MAX_VALUE - docFreqs[tokenId]) << 32 | tokenId;
+        }
+        Arrays.sort(order);
+
+        int[] oldIds = new int[order.length];
+        int[] newIds = new int[oldSize];
+        int[] newDocFreqs = new int[order.length];
+
+        Arrays.fill(newIds, SimpleDoc.NOT_FOUND);
+        for (int i = 0; i < order.length; i++) {
+            oldIds[i]         = (int) order[i];
+            newIds[oldIds[i]] = i;
+            newDocFreqs[i]    = docFreqs[oldIds[i]];
+        }
+
+        dictionary = dictionary.copy(oldIds);
+        docFreqs   = newDocFreqs;
+        shards     = newShards(shards.length);
+
+        synchronized (docs) {
+            for (Map.Entry<String, SimpleDoc> entry : docs.entrySet()) {
+                SimpleDoc simpleDoc = entry.getValue().remap(dictionary, newIds, tokenStore);
+                entry.setValue(simpleDoc);
+
+                InvertedIndex index = invertedIndex(entry.getKey());
+                if (index != null) index.add(simpleDoc);
+            }
+
+            Arrays.fill(changedShards, true);
+            changed = true;
+            modCount++;
+        }
+
+        LOGGER.info("Compacted dictionary from {} to {} terms in {}ms", oldSize, dictionary.size(), (System.nanoTime() - startNano) / 1_000_000f);
+    }
+
+
+    /** Returns true if the dictionary is compacted, see {@link #dictionaryCompaction(int)}. */
+    private boolean compacts() {
+        return livePercent > 0 && tokenStore == null;
+    }
+
+
+    /** Counts the documents per token id, see {@link #dictionaryCompaction(int)}. Called under the lock of the documents. */
+    private void count(SimpleDoc simpleDoc, int delta) {
+        if (! compacts()) return;
+
+        simpleDoc.forEachToken((tokenId, lastPos) -> {
+            if (tokenId >= docFreqs.length) docFreqs = Arrays.copyOf(docFreqs, Math.max(tokenId + 1, docFreqs.length * 3 / 2));
+
+            int oldDocFreq = docFreqs[tokenId];
+            docFreqs[tokenId] = oldDocFreq + delta;
+
+            if (oldDocFreq == 0) liveTerms++;
+            if (oldDocFreq + delta == 0) liveTerms--;
+        });
+    }
+
+
+    private Shard[] newShards(int count) {
+        Shard[] newShards = new Shard[count];
+        for (int s = 0; s < count; s++) newShards[s] = new Shard(invertedIndex);
+        return newShards;
+    }
+
+
+    private int shard(String id) {
+        return Math.floorMod(id.hashCode(), shards.length);
+    }
+
+
+    /** Returns the inverted index of the shard of the document, {@code null} without inverted index. */
+    private InvertedIndex invertedIndex(String id) {
+        return shards[shard(id)].invertedIndex;
+    }
+
+
+    /** Returns the hashes of the query tokens: the query normalized by the {@link Linguistic} filter. */
+    private static long[] hashes(String query) {
+        Tokens tokens = TOKENS_RECYCLER.get().reset(query);
+
+        LongArrayList hashes = new LongArrayList();
+        while (tokens.next()) {
+            hashes.add(tokens.hash());
+            if (isPrefix(query, tokens)) hashes.add(PREFIX);
         }
 
         TOKENS_RECYCLER.recycle(tokens);
+
+        return hashes.toArray();
     }
 
 
@@ -180,9 +919,41 @@ class Corpus {
 
 
     private void put(String id, SimpleDoc simpleDoc) {
+        SimpleDoc old;
+
+        synchronized (docs) {
+            old = docs.put(id, simpleDoc);
+            count(simpleDoc, 1);
+            if (old != null) count(old, -1);
+            changed = true;
+            changedShards[shard(id)] = true;
+            modCount++;
+        }
+
+        InvertedIndex index = invertedIndex(id);
+        if (old != null && index != null) index.remove(old);
+    }
+
+
+    private void remove(String id) {
+        SimpleDoc old;
+
         synchronized (docs) {
-            docs.put(id, simpleDoc);
+            old = docs.remove(id);
+            changed |= old != null;
+            if (old != null) {
+                count(old, -1);
+                changedShards[shard(id)] = true;
+                modCount++;
+            }
         }
+
+        if (old == null) return;
+
+        LOGGER.debug("DEL: {}", id);
+
+        InvertedIndex index = invertedIndex(id);
+        if (index != null) index.remove(old);
     }
 
 }
@@ -1,47 +1,94 @@
 package com.qaware.mcp.tools.knowledge;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-import com.carrotsearch.hppc.LongIntHashMap;
 import com.qaware.mcp.tools.knowledge.nlp.Chars;
 
 /**
  * A compact and efficient dictionary for mapping character sequences (words) to integer IDs and back.
  * <p>
- * Internally, words are stored in a single char array, and their start positions are tracked in an offsets array.
- * Lookup and insertion are performed using a 64-bit hash of the word. The mapping from hash to ID is managed by a LongIntHashMap.
+ * Internally, words are appended UTF-8 encoded to a segmented byte arena (one byte per char for mostly Latin text), and
+ * their start position and length are tracked per ID. A word UTF-8 can not represent (an unpaired surrogate) is stored as
+ * its UTF-16 chars instead, so that it is read back with the chars it was hashed from.
+ * Lookup and insertion are performed using a 64-bit hash of the word. The mapping from hash to ID is an open
+ * addressing hash table, split into stripes by the upper bits of the hash.
  * <p>
  * <b>Hash Collisions:</b> This implementation assumes that hash collisions are extremely rare when using a high-quality 64-bit hash function.
  * In practice, for realistic dictionary sizes (up to hundreds of millions of entries), the probability of a collision is negligible (see Birthday Paradox).
  * <p>
- * <b>Thread Safety:</b> Only the add(long, char[], int, int) method is synchronized. Other methods are not thread-safe.
+ * <b>Thread Safety:</b> Thread-safe. Every token of every document is added from the parallel scanner threads, so
+ * lookups never lock: the hash tables are published by volatile writes, and a new word is visible only after its
+ * bytes are copied. An insertion locks only the stripe of its hash and reserves its ID and the room for its bytes by
+ * atomic counters, so insertions of different stripes run in parallel. IDs are dense and never change; words no
+ * longer used are only dropped by a compacted {@link #copy(int[])}.
  * <p>
- * This class is optimized for performance and memory usage, not for persistence or serialization.
+ * This class is optimized for performance and memory usage. It can be persisted as part of an {@link IndexFile}, the
+ * hash tables are rebuilt on reading.
  */
 public class Dictionary {
 
     /** Constant returned when a word is not found in the dictionary. */
     public static final int NOT_FOUND = -1;
 
-    /** Stores all characters of all words in a single array. */
-    private char[] chars = {};
+    private static final int STRIPE_BITS = 6;
 
-    /** Stores the start offsets of each word in the chars array. */
-    private int[] offsets = { 0 };
+    private static final int SEGMENT_BITS = 15;
 
-    /** Current position in the chars array (end of the last word). */
-    private int pos;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
 
-    /** Number of words in the dictionary. */
-    private int size;
+    private static final int ID_SEGMENT_BITS = 12;
 
-    /** Maps 64-bit hash values to word IDs (indices). */
-    private LongIntHashMap hashToId = new LongIntHashMap(1_000, 0.5f);
+    private static final int ID_SEGMENT_SIZE = 1 << ID_SEGMENT_BITS;
+
+    /** Marks a free slot of a hash table, the hash 0 is stored as {@link #ZERO_HASH}. */
+    private static final long EMPTY = 0;
+
+    private static final long ZERO_HASH = 0x9e3779b97f4a7c15L;
+
+    /** Flags the length of a word stored as UTF-16 chars, see {@link #encode(char[], int, int)}. */
+    private static final int UTF_16 = 1 << 31;
+
+    /** Maps 64-bit hash values to word IDs (indices), selected by the upper bits of the hash. */
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    /** Number of words in the dictionary, the next ID. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** End of the last reserved word in the byte arena. */
+    private final AtomicInteger pos = new AtomicInteger();
+
+    /** The byte arena, {@link #SEGMENT_SIZE} bytes per segment. Only grows, by a new copy of the array. */
+    private volatile byte[][] byteSegments = {};
+
+    /**
+     * Start and length + 1 of the UTF-8 bytes of each ID (or'ed with {@link #UTF_16}), {@link #ID_SEGMENT_SIZE} IDs per
+     * segment. 0 while they are copied.
+     */
+    private volatile AtomicLongArray[] spanSegments = {};
+
+    /** Created by the first {@link #startingWith(String, int)}, most dictionaries are never completed. */
+    private volatile PrefixIndex prefixIndex;
+
+
+    public Dictionary() {
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Stripe();
+    }
 
 
     /** Returns the number of words in the dictionary. */
     public int size() {
-        return size;
+        return size.get();
     }
 
 
@@ -65,7 +112,8 @@ public class Dictionary {
 
     /** Looks up the ID */
     public int get(long hash) {
-        return hashToId.getOrDefault(hash, NOT_FOUND);
+        long key = key(hash);
+        return stripe(key).table.get(key);
     }
 
 
@@ -84,31 +132,383 @@ public class Dictionary {
     /**
      * Returns the word at the given index as a String.
      * @param index the word ID
-     * @return the word, or null if index is out of bounds
+     * @return the word, or null if index is out of bounds (or its word is still being added)
      */
     public String get(int index) {
-        if (index < 0 || index >= size) return null;
-        int start = offsets[index];
-        return new String(chars, start, offsets[index + 1] - start);
+        long span = span(index);
+        if (span == 0) return null;
+
+        byte[] bytes = bytes(span);
+        return isUtf16(span) ? decodeUtf16(bytes, 0, bytes.length) : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Returns the IDs of up to {@code max} words starting with the prefix, in the order of their UTF-8 bytes, see
+     * {@link PrefixIndex}.
+     */
+    public int[] startingWith(String prefix, int max) {
+        PrefixIndex index = prefixIndex;
+        if (index == null) index = prefixIndex();
+
+        return index.find(prefix.getBytes(StandardCharsets.UTF_8), max);
+    }
+
+
+    private synchronized PrefixIndex prefixIndex() {
+        if (prefixIndex == null) prefixIndex = new PrefixIndex(this);
+        return prefixIndex;
+    }
+
+
+    /** Returns true if the word of the ID is added completely. */
+    boolean contains(int id) {
+        return span(id) != 0;
+    }
+
+
+    /** Compares the UTF-8 bytes of the words unsigned, which orders them by code point. */
+    int compare(int id, int otherId) {
+        long span      = span(id);
+        long otherSpan = span(otherId);
+
+        int start       = (int) (span >>> 32);
+        int length      = length(span);
+        int otherStart  = (int) (otherSpan >>> 32);
+        int otherLength = length(otherSpan);
+
+        byte[][] segments = byteSegments;
+        for (int i = 0; i < Math.min(length, otherLength); i++) {
+            int diff = (byteAt(segments, start + i) & 0xff) - (byteAt(segments, otherStart + i) & 0xff);
+            if (diff != 0) return diff;
+        }
+        return Integer.compare(length, otherLength);
+    }
+
+
+    /** Compares the word with the UTF-8 bytes of a prefix like {@link #compare(int, int)}, 0 if the word starts with it. */
+    int comparePrefix(int id, byte[] prefix) {
+        long span = span(id);
+
+        int start  = (int) (span >>> 32);
+        int length = length(span);
+
+        byte[][] segments = byteSegments;
+        for (int i = 0; i < Math.min(length, prefix.length); i++) {
+            int diff = (byteAt(segments, start + i) & 0xff) - (prefix[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return length < prefix.length ? -1 : 0;
+    }
+
+
+    /**
+     * Returns a new dictionary with the words of the given IDs only, the word of {@code oldIds[i]} gets the ID {@code i}.
+     * The words keep their hashes, nothing is decoded. Must not be called while words are added.
+     */
+    Dictionary copy(int[] oldIds) {
+        long[] keys = new long[size.get()];
+        for (Stripe stripe : stripes) {
+            Table table = stripe.table;
+            for (int slot = 0; slot < table.ids.length; slot++) {
+                long key = table.keys.get(slot);
+                if (key != EMPTY) keys[table.ids[slot]] = key;
+            }
+        }
+
+        Dictionary copy = new Dictionary();
+        for (int oldId : oldIds) {
+            Stripe stripe = copy.stripe(keys[oldId]);
+            synchronized (stripe) {
+                long span = span(oldId);
+                stripe.put(keys[oldId], copy.store(bytes(span), isUtf16(span)));
+            }
+        }
+        return copy;
+    }
+
+
+    /**
+     * Writes all words as they are stored, see {@link #read(DataInput)}: the flagged length of each, then their bytes.
+     * Words added concurrently may be left out.
+     */
+    void write(DataOutput out) throws IOException {
+        int count = size.get();
+        int[] lengths = new int[count];
+        ByteArrayOutputStream words = new ByteArrayOutputStream();
+
+        for (int i = 0; i < count; i++) {
+            long span;
+            while ((span = span(i)) == 0) Thread.onSpinWait(); // its ID is reserved, its bytes are being copied
+
+            lengths[i] = (int) span;
+            words.write(bytes(span));
+        }
+
+        out.writeInt(count);
+        IndexFile.writeInts(out, lengths, count);
+        out.writeInt(words.size());
+        out.write(words.toByteArray());
+    }
+
+
+    /**
+     * Reads the words written by {@link #write(DataOutput)} into this empty dictionary, so they keep their IDs. The words
+     * are decoded to the chars they were added with and hashed again.
+     */
+    void read(DataInput in) throws IOException {
+        if (size.get() != 0) throw new IllegalStateException("dictionary is not empty");
+
+        int count = in.readInt();
+        int[] lengths = IndexFile.readInts(in);
+        byte[] words = new byte[in.readInt()];
+        in.readFully(words);
+
+        if (lengths.length != count) throw new IOException("corrupt dictionary");
+
+        for (int i = 0, offset = 0; i < count; i++) {
+            int length = length(lengths[i]);
+            if (length < 0 || offset + length > words.length) throw new IOException("corrupt dictionary");
+
+            char[] chars = (isUtf16(lengths[i]) ? decodeUtf16(words, offset, length) : new String(words, offset, length, StandardCharsets.UTF_8)).toCharArray();
+            if (add(chars, 0, chars.length) != i) throw new IOException("corrupt dictionary");
+
+            offset += length;
+        }
+    }
+
+
+    /** Adds a new word to the dictionary using its hash, if not already present. Only locks the stripe of the hash. */
+    private int add(long hash, char[] aChars, int start, int end) {
+        long key = key(hash);
+        Stripe stripe = stripe(key);
+
+        int id = stripe.table.get(key);
+        if (id != NOT_FOUND) return id;
+
+        synchronized (stripe) {
+            id = stripe.table.get(key);
+            if (id != NOT_FOUND) return id;
+
+            byte[] bytes = encode(aChars, start, end);
+            id = bytes != null ? store(bytes, false) : store(encodeUtf16(aChars, start, end), true);
+            stripe.put(key, id);
+            return id;
+        }
+    }
+
+
+    /**
+     * Returns the UTF-8 bytes of the chars, {@code null} if they have an unpaired surrogate: UTF-8 can not represent it,
+     * and a replacement would be read back as other chars with another hash.
+     */
+    private static byte[] encode(char[] chars, int start, int end) {
+        boolean surrogates = false;
+        for (int i = start; i < end && ! surrogates; i++) surrogates = Character.isSurrogate(chars[i]);
+
+        if (! surrogates) return new String(chars, start, end - start).getBytes(StandardCharsets.UTF_8);
+
+        try {
+            ByteBuffer encoded = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .encode(CharBuffer.wrap(chars, start, end - start));
+
+            return Arrays.copyOf(encoded.array(), encoded.limit());
+
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+
+    /** Returns the chars as they are, 2 bytes each. The UTF-16 charset would replace unpaired surrogates as well. */
+    private static byte[] encodeUtf16(char[] chars, int start, int end) {
+        byte[] bytes = new byte[2 * (end - start)];
+        ByteBuffer.wrap(bytes).asCharBuffer().put(chars, start, end - start);
+        return bytes;
+    }
+
+
+    private static String decodeUtf16(byte[] bytes, int offset, int length) {
+        return ByteBuffer.wrap(bytes, offset, length).slice().asCharBuffer().toString();
+    }
+
+
+    /** Appends the bytes of a new word to the arena and returns its new ID. */
+    private int store(byte[] bytes, boolean utf16) {
+        int length = bytes.length;
+        int offset = pos.getAndAdd(length);
+
+        byte[][] segments = byteSegments(offset + length);
+        for (int done = 0; done < length; ) {
+            int at = offset + done;
+            int count = Math.min(length - done, SEGMENT_SIZE - (at & SEGMENT_SIZE - 1));
+            System.arraycopy(bytes, done, segments[at >>> SEGMENT_BITS], at & SEGMENT_SIZE - 1, count);
+            done += count;
+        }
+
+        int id = size.getAndIncrement();
+        spanSegments(id + 1)[id >>> ID_SEGMENT_BITS].set(id & ID_SEGMENT_SIZE - 1, (long) offset << 32 | (length + 1 | (utf16 ? UTF_16 : 0)) & 0xFFFFFFFFL);
+
+        return id;
+    }
+
+
+    /** Returns the stored bytes of a word. */
+    private byte[] bytes(long span) {
+        int start  = (int) (span >>> 32);
+        int length = length(span);
+
+        byte[][] segments = byteSegments;
+        byte[] bytes = new byte[length];
+        for (int done = 0; done < length; ) {
+            int at = start + done;
+            int count = Math.min(length - done, SEGMENT_SIZE - (at & SEGMENT_SIZE - 1));
+            System.arraycopy(segments[at >>> SEGMENT_BITS], at & SEGMENT_SIZE - 1, bytes, done, count);
+            done += count;
+        }
+        return bytes;
+    }
+
+
+    private static int length(long span) {
+        return ((int) span & ~UTF_16) - 1;
+    }
+
+
+    private static boolean isUtf16(long span) {
+        return ((int) span & UTF_16) != 0;
+    }
+
+
+    private static byte byteAt(byte[][] segments, int pos) {
+        return segments[pos >>> SEGMENT_BITS][pos & SEGMENT_SIZE - 1];
+    }
+
+
+    /** Returns the start and length + 1 of the bytes of the word, 0 if there is none (yet). */
+    private long span(int id) {
+        AtomicLongArray[] segments = spanSegments;
+        if (id < 0 || id >>> ID_SEGMENT_BITS >= segments.length) return 0;
+
+        return segments[id >>> ID_SEGMENT_BITS].get(id & ID_SEGMENT_SIZE - 1);
+    }
+
+
+    /** Returns the byte segments, at least up to the given end. */
+    private byte[][] byteSegments(int end) {
+        byte[][] segments = byteSegments;
+        return segments.length << SEGMENT_BITS >= end ? segments : growByteSegments(end);
     }
 
 
-    /** Adds a new word to the dictionary using its hash, if not already present. This method is synchronized for thread safety. */
-    private synchronized int add(long hash, char[] aChars, int start, int end) {
-        int index = hashToId.indexOf(hash);
-        if (index >= 0) return hashToId.indexGet(index);
+    private synchronized byte[][] growByteSegments(int end) {
+        byte[][] segments = byteSegments;
+        if (segments.length << SEGMENT_BITS >= end) return segments;
+
+        int oldLength = segments.length;
+        segments = Arrays.copyOf(segments, (end + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+        for (int i = oldLength; i < segments.length; i++) segments[i] = new byte[SEGMENT_SIZE];
+
+        byteSegments = segments;
+        return segments;
+    }
+
+
+    /** Returns the span segments, at least up to the given end. */
+    private AtomicLongArray[] spanSegments(int end) {
+        AtomicLongArray[] segments = spanSegments;
+        return segments.length << ID_SEGMENT_BITS >= end ? segments : growSpanSegments(end);
+    }
+
+
+    private synchronized AtomicLongArray[] growSpanSegments(int end) {
+        AtomicLongArray[] segments = spanSegments;
+        if (segments.length << ID_SEGMENT_BITS >= end) return segments;
+
+        int oldLength = segments.length;
+        segments = Arrays.copyOf(segments, (end + ID_SEGMENT_SIZE - 1) >>> ID_SEGMENT_BITS);
+        for (int i = oldLength; i < segments.length; i++) segments[i] = new AtomicLongArray(ID_SEGMENT_SIZE);
+
+        spanSegments = segments;
+        return segments;
+    }
+
+
+    private Stripe stripe(long key) {
+        return stripes[(int) (key >>> 64 - STRIPE_BITS)];
+    }
+
+
+    private static long key(long hash) {
+        return hash == EMPTY ? ZERO_HASH : hash;
+    }
+
+
+    /** One stripe of the hash to ID mapping. Written under its lock, read without. */
+    private static final class Stripe {
+
+        /** Replaced by a copy of twice the capacity when half full. */
+        private volatile Table table = new Table(16);
+
+        private int count;
+
+
+        void put(long key, int id) {
+            Table current = table;
+
+            if (2 * ++count > current.ids.length) {
+                Table grown = new Table(current.ids.length * 2);
+                for (int slot = 0; slot < current.ids.length; slot++) {
+                    long oldKey = current.keys.get(slot);
+                    if (oldKey != EMPTY) grown.put(oldKey, current.ids[slot]);
+                }
+                grown.put(key, id);
+                table = grown;
+
+            } else {
+                current.put(key, id);
+            }
+        }
+
+    }
+
+
+    /** Open addressing with linear probing. A slot is published by the volatile write of its key after its ID. */
+    private static final class Table {
+
+        private final AtomicLongArray keys;
+
+        private final int[] ids;
+
+        private final int mask;
+
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            ids  = new int[capacity];
+            mask = capacity - 1;
+        }
+
+
+        int get(long key) {
+            for (int slot = (int) key & mask; ; slot = slot + 1 & mask) {
+                long slotKey = keys.get(slot);
+                if (slotKey == key) return ids[slot];
+                if (slotKey == EMPTY) return NOT_FOUND;
+            }
+        }
 
-        hashToId.indexInsert(index, hash, size);
 
-        int oldPos = pos;
-        pos += end - start;
-        if (pos > chars.length) chars = Arrays.copyOf(chars, pos * 3 / 2);
-        System.arraycopy(aChars, start, chars, oldPos, end - start);
+        void put(long key, int id) {
+            int slot = (int) key & mask;
+            while (keys.get(slot) != EMPTY) slot = slot + 1 & mask;
 
-        if (offsets.length == size + 1) offsets = Arrays.copyOf(offsets, size * 3 / 2 + 4);
-        offsets[size + 1] = pos;
+            ids[slot] = id;
+            keys.set(slot, key);
+        }
 
-        return size++;
     }
 
 }
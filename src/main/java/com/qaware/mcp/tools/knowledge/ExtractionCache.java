@@ -0,0 +1,196 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of extracted (Tika) texts in a directory, keyed by the SHA-256 of the file bytes: one UTF-8 file per
+ * text, named by the hash. So identical bytes are never parsed again, neither after a restart nor after a {@code touch},
+ * a git checkout or a remount changed the modification time.
+ * <p>
+ * Bounded by the total size of the files: the least recently used ones are deleted. The modification time of a file is
+ * its last use, so the order survives restarts.
+ * <p>
+ * <b>Thread Safety:</b> Thread-safe. One instance per directory, see {@link #open(String, long)}.
+ */
+final class ExtractionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtractionCache.class);
+
+    private static final String SUFFIX = ".txt";
+
+    private static final Map<Path, ExtractionCache> INSTANCES = new HashMap<>();
+
+    private final Path dir;
+
+    private final long maxBytes;
+
+    /** The sizes of the cached files by hash, least recently used first. */
+    private final Map<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+
+    ExtractionCache(Path dir, long maxBytes) {
+        this.dir      = dir;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(dir);
+
+            try (Stream<Path> files = Files.list(dir)) {
+                files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                        .sorted(Comparator.comparing(ExtractionCache::lastModified))
+                        .forEach(file -> {
+                            String name = file.getFileName().toString();
+                            long size = size(file);
+                            sizes.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                            bytes += size;
+                        });
+            }
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        evict();
+    }
+
+
+    /** Returns the cache for the directory, creating it if needed. {@code null} if {@code dir} is {@code null}. */
+    static synchronized ExtractionCache open(String dir, long maxBytes) {
+        if (dir == null) return null;
+
+        return INSTANCES.computeIfAbsent(Path.of(dir).toAbsolutePath().normalize(), path -> new ExtractionCache(path, maxBytes));
+    }
+
+
+    /** Returns the cached text of the bytes or extracts, caches and returns it. */
+    String get(byte[] bytes, Supplier<String> extractor) {
+        String hash = hash(bytes);
+        Path file = dir.resolve(hash + SUFFIX);
+
+        if (touch(hash)) {
+            try {
+                String text = Files.readString(file, StandardCharsets.UTF_8);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                return text;
+
+            } catch (IOException ioe) { // e.g. evicted or deleted meanwhile, just extract again
+                LOGGER.debug("Reading cached text {} failed: {}", file, ioe.toString());
+                remove(hash);
+            }
+        }
+
+        String text = extractor.get();
+        put(hash, file, text);
+        return text;
+    }
+
+
+    synchronized int size() {
+        return sizes.size();
+    }
+
+
+    /** Returns true if the hash is cached, marking it as used. */
+    private synchronized boolean touch(String hash) {
+        return sizes.get(hash) != null;
+    }
+
+
+    private void put(String hash, Path file, String text) {
+        Path tmp = file.resolveSibling(hash + "." + Thread.currentThread().threadId() + ".tmp");
+
+        try {
+            Files.writeString(tmp, text, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException ioe) { // the cache is an optimization only
+            LOGGER.warn("Caching extracted text in {} failed: {}", file, ioe.toString());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                LOGGER.debug("Deleting {} failed: {}", tmp, e.toString());
+            }
+            return;
+        }
+
+        synchronized (this) {
+            Long old = sizes.put(hash, size(file));
+            bytes += sizes.get(hash) - (old == null ? 0 : old);
+            evict();
+        }
+    }
+
+
+    private synchronized void remove(String hash) {
+        Long size = sizes.remove(hash);
+        if (size != null) bytes -= size;
+    }
+
+
+    /** Deletes the least recently used files until the size is within the bound. */
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = sizes.entrySet().iterator();
+
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+
+            try {
+                Files.deleteIfExists(dir.resolve(entry.getKey() + SUFFIX));
+            } catch (IOException ioe) {
+                LOGGER.debug("Evicting {} failed: {}", entry.getKey(), ioe.toString());
+            }
+
+            bytes -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+
+    static String hash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM supports SHA-256
+        }
+    }
+
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException ioe) {
+            return 0;
+        }
+    }
+
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException ioe) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+}
@@ -3,65 +3,371 @@ package com.qaware.mcp.tools.knowledge;
 import com.qaware.mcp.tools.McpSourceTool;
 import com.qaware.mcp.tools.knowledge.nlp.BytesDecoder;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Scans directory trees for supported documents.
+ * <p>
+ * By default, every scan walks all roots and reports every file. In watch mode, only the first scan walks the roots;
+ * it also registers a {@link WatchService} on every directory. Later scans only report the files created, modified or
+ * deleted since the previous scan, which makes them independent of the tree size. If the watch service overflows or a
+ * watched directory disappears, the next scan falls back to a full walk. Files to {@link #retry(Collection)} are
+ * reported by the next scan as if they changed.
+ * <p>
+ * Text files are decoded while they are read by {@link Location#load()}, without a byte array of the file, or streamed
+ * if they have {@link #STREAMING_SIZE} bytes or more. Other files are read and parsed (Tika). The version of a file is its
+ * modification time. With an {@link ExtractionCache}, a file whose time changed but whose bytes did not is still read
+ * again, but not parsed again.
+ */
+class FileSystemScanner implements Scanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemScanner.class);
+
+    /** Text files of at least this size are streamed instead of decoded as a whole, see {@link Location#openReader()}. */
+    static final long STREAMING_SIZE = 1 << 25;
 
-class FileSystemScanner implements Consumer<Consumer<Location>> {
+    private static final byte[] NO_BYTES = {};
+
+    /**
+     * One decoder per concurrent read, so their direct read buffers are reused across files. Recycled without the chars
+     * of the last file, a decoder only keeps its read buffer.
+     */
+    private static final Recycler<BytesDecoder> DECODERS = new Recycler<>(BytesDecoder::new, decoder -> decoder.reset(NO_BYTES));
 
     private final String[] roots;
 
+    private boolean watch;
+
+    private WatchService watchService;
+
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+
+    /** Serializes the scans. Not a monitor: the consumer may block a virtual thread on a full ingestion pipeline. */
+    private final ReentrantLock scanLock = new ReentrantLock();
+
+    private final Set<Path> retries = ConcurrentHashMap.newKeySet();
+
+    private ExtractionCache extractionCache;
+
 
     public FileSystemScanner(String... roots) {
+        this(false, roots);
+    }
+
+
+    public FileSystemScanner(boolean watch, String... roots) {
+        this.watch = watch;
         this.roots = roots;
     }
 
 
+    /** Caches the texts extracted by Tika, {@code null} (the default) parses each new or modified file. */
+    FileSystemScanner extractionCache(ExtractionCache extractionCache) {
+        this.extractionCache = extractionCache;
+        return this;
+    }
+
+
     @Override
-    public void accept(Consumer<Location> locationConsumer) {
-        for (String root : roots) {
-            McpSourceTool.scan(Path.of(root), FileSystemScanner::isSupported, path -> {
+    public boolean scan(Consumer<Location> locationConsumer) {
+        scanLock.lock();
+        try {
+            return scanChanges(locationConsumer);
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void retry(Collection<String> ids) {
+        for (String id : ids) retries.add(Path.of(id));
+    }
+
+
+    private boolean scanChanges(Consumer<Location> locationConsumer) {
+        List<Path> retried = new ArrayList<>(retries);
+        retries.removeAll(retried);
 
-                String location = path.toAbsolutePath().toString().replace('\\', '/');
+        if (watch && watchService != null) {
+            Set<Path> changed = pollChanges();
 
-                locationConsumer.accept(
+            if (changed != null) {
+                changed.addAll(retried);
+                changed.parallelStream().forEach(path -> locationConsumer.accept(Files.isRegularFile(path) ? newLocation(path) : deleted(path)));
+                return false;
+            }
 
-                        new Location() {
+            LOGGER.info("Watch service lost track of changes, falling back to a full scan");
+        }
+
+        Set<Path> found = watch ? watchAll() : null;
+
+        if (found != null) {
+            found.parallelStream().forEach(path -> locationConsumer.accept(newLocation(path)));
+        } else {
+            for (String root : roots) {
+                McpSourceTool.scan(Path.of(root), FileSystemScanner::isSupported, path -> locationConsumer.accept(newLocation(path)));
+            }
+        }
+
+        return true;
+    }
+
+
+    /** Returns the supported files changed since the last poll or {@code null} if a full scan is required. */
+    private Set<Path> pollChanges() {
+        Set<Path> changed = new HashSet<>();
+
+        try {
+            for (WatchKey watchKey = watchService.poll(); watchKey != null; watchKey = watchService.poll()) {
+                Path dir = watchedDirs.get(watchKey);
+
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) return null;
+
+                    Path path = dir.resolve((Path) event.context());
+
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && watchedDirs.containsValue(path)) return null; // unknown content
 
-                            private byte[] bytesCached;
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        watch(path, changed);
+                    } else if (isSupported(path)) {
+                        changed.add(path);
+                    }
+                }
 
-                            private String tikaCached;
+                if (! watchKey.reset()) {
+                    watchedDirs.remove(watchKey);
+                    return null;
+                }
+            }
 
+            return changed;
 
-                            @Override
-                            public String getId() {
-                                return location;
-                            }
+        } catch (ClosedWatchServiceException | UncheckedIOException e) {
+            return null;
+        }
+    }
 
-                            @Override
-                            public long getVersion() {
-                                return getLastMod(path);
-                            }
 
-                            @Override
-                            public synchronized CharSequence getChars() {
-                                if (bytesCached == null) bytesCached = McpSourceTool.readBytes(McpSourceTool.toURL(path).toString());
+    /** Registers a new watch service for all directories below the roots and returns all supported files or {@code null} on failure. */
+    private Set<Path> watchAll() {
+        closeWatchService();
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
 
-                                if (! TikaTool.isSupported(location)) return new BytesDecoder().reset(bytesCached);
+            Set<Path> found = new HashSet<>();
+            for (String root : roots) watch(Path.of(root), found);
 
-                                if (tikaCached == null) tikaCached = TikaTool.parse(new ByteArrayInputStream(bytesCached));
-                                return tikaCached;
-                            }
-                        }
-                );
+            return found;
+
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Can not watch {}, falling back to full scans: {}", String.join(";", roots), e.toString());
+            closeWatchService();
+            watch = false;
+            return null;
+        }
+    }
 
 
+    /** Registers all directories below {@code root} and adds the supported files found to {@code found}. */
+    private void watch(Path root, Set<Path> found) {
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.forEach(path -> {
+                if (Files.isDirectory(path)) {
+                    register(path);
+                } else if (Files.isRegularFile(path) && isSupported(path)) {
+                    found.add(path);
+                }
             });
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    private void register(Path dir) {
+        try {
+            WatchKey watchKey = dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+
+            watchedDirs.put(watchKey, dir);
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    private void closeWatchService() {
+        if (watchService == null) return;
+
+        try {
+            watchService.close();
+        } catch (IOException ioe) {
+            LOGGER.debug("Closing watch service failed: {}", ioe.toString());
+        }
+
+        watchService = null;
+        watchedDirs.clear();
+    }
+
+
+    private Location newLocation(Path path) {
+        String location = getId(path);
+
+        return new Location() {
+
+            private byte[] bytesCached;
+
+            private String tikaCached;
+
+            private String textCached;
+
+
+            @Override
+            public String getId() {
+                return location;
+            }
+
+            @Override
+            public long getVersion() {
+                return getLastMod(path);
+            }
+
+            /** Reads the bytes to parse. Text files are decoded while they are read instead, unless they are streamed. */
+            @Override
+            public synchronized void load() {
+                if (needsParsing()) {
+                    if (bytesCached == null) bytesCached = readBytes(path);
+                } else if (textCached == null && ! isStreamed(path)) {
+                    textCached = decode(path);
+                }
+            }
+
+            @Override
+            public boolean needsParsing() {
+                return TikaTool.isSupported(location);
+            }
+
+            @Override
+            public Reader openReader() {
+                try {
+                    if (needsParsing() || ! isStreamed(path)) return null;
+
+                    return new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8); // replaces malformed input
+
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+
+            @Override
+            public synchronized CharSequence getChars() {
+                if (! needsParsing()) {
+                    if (textCached == null) textCached = decode(path);
+                    return textCached;
+                }
+
+                load();
+
+                if (tikaCached == null) tikaCached = extractionCache == null ? parse() : extractionCache.get(bytesCached, this::parse);
+                return tikaCached;
+            }
+
+            private String parse() {
+                return TikaTool.parse(new ByteArrayInputStream(bytesCached));
+            }
+        };
+    }
+
+
+    private static Location deleted(Path path) {
+        String location = getId(path);
+
+        return new Location() {
+
+            @Override
+            public String getId() {
+                return location;
+            }
+
+            @Override
+            public long getVersion() {
+                return DELETED;
+            }
+
+            @Override
+            public CharSequence getChars() {
+                return "";
+            }
+        };
+    }
+
+
+    private static boolean isStreamed(Path path) {
+        try {
+            return Files.size(path) >= STREAMING_SIZE;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
         }
+    }
+
+
+    private static String decode(Path path) {
+        BytesDecoder bytesDecoder = DECODERS.get();
+        try {
+            return bytesDecoder.reset(path).toString();
+        } finally {
+            DECODERS.recycle(bytesDecoder);
+        }
+    }
+
+
+    private static byte[] readBytes(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
 
+    private static String getId(Path path) {
+        return path.toAbsolutePath().toString().replace('\\', '/');
     }
 
 
@@ -0,0 +1,109 @@
+package com.qaware.mcp.tools.knowledge;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.procedures.IntIntProcedure;
+
+/** {@link TokenData} on the heap. Built position by position via {@link #add(int, int, int)}, immutable afterwards. */
+final class HeapTokenData implements TokenData {
+
+    private final IntIntHashMap lastPos = new IntIntHashMap();
+
+    private final IntArrayList tokenIds;
+
+    private final IntArrayList previous;
+
+    private final IntArrayList beginEnd;
+
+
+    HeapTokenData() {
+        tokenIds = new IntArrayList();
+        previous = new IntArrayList();
+        beginEnd = new IntArrayList();
+    }
+
+
+    /** Wraps arrays read from an {@link IndexFile}; only the last positions are rebuilt. */
+    HeapTokenData(int[] aTokenIds, int[] aPrevious, int[] aBeginEnd) {
+        tokenIds = IntArrayList.from(aTokenIds);
+        previous = IntArrayList.from(aPrevious);
+        beginEnd = IntArrayList.from(aBeginEnd);
+
+        for (int pos = 0; pos < aTokenIds.length; pos++) lastPos.put(aTokenIds[pos], pos);
+    }
+
+
+    /** Copies the token data, replacing each token id {@code t} by {@code newIds[t]}. The positions stay the same. */
+    static HeapTokenData remap(TokenData tokenData, int[] newIds) {
+        int size = tokenData.size();
+
+        int[] tokenIds = new int[size];
+        int[] previous = new int[size];
+        int[] beginEnd = new int[size * 2];
+
+        for (int pos = 0; pos < size; pos++) {
+            tokenIds[pos]         = newIds[tokenData.tokenId(pos)];
+            previous[pos]         = tokenData.previous(pos);
+            beginEnd[pos * 2]     = tokenData.begin(pos);
+            beginEnd[pos * 2 + 1] = tokenData.end(pos);
+        }
+
+        return new HeapTokenData(tokenIds, previous, beginEnd);
+    }
+
+
+    /** Appends the next position. */
+    void add(int tokenId, int begin, int end) {
+        int pos = tokenIds.size();
+
+        tokenIds.add(tokenId);
+
+        previous.add(lastPos.getOrDefault(tokenId, SimpleDoc.NOT_FOUND));
+        lastPos.put(tokenId, pos);
+
+        beginEnd.add(begin, end);
+    }
+
+
+    @Override
+    public int size() {
+        return tokenIds.size();
+    }
+
+
+    @Override
+    public int tokenId(int pos) {
+        return tokenIds.get(pos);
+    }
+
+
+    @Override
+    public int previous(int pos) {
+        return previous.get(pos);
+    }
+
+
+    @Override
+    public int begin(int pos) {
+        return beginEnd.get(pos * 2);
+    }
+
+
+    @Override
+    public int end(int pos) {
+        return beginEnd.get(pos * 2 + 1);
+    }
+
+
+    @Override
+    public int lastPos(int tokenId) {
+        return lastPos.getOrDefault(tokenId, SimpleDoc.NOT_FOUND);
+    }
+
+
+    @Override
+    public void forEachToken(IntIntProcedure procedure) {
+        lastPos.forEach(procedure);
+    }
+
+}
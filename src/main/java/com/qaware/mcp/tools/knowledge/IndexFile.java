@@ -0,0 +1,134 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Versioned binary snapshot of a corpus: the {@link Dictionary} and all {@link SimpleDoc}s including their source, so a
+ * restarted server only re-indexes the files changed in the meantime.
+ * <p>
+ * Layout: magic, version, dictionary, number of documents, then id and document for each of them. Int arrays are written
+ * as length plus big endian ints, texts as length plus UTF-8. The version must be incremented whenever the layout or the
+ * token data changes (e.g. a new {@link Linguistic} filter), older files are then ignored.
+ */
+enum IndexFile {
+
+    ;
+
+
+    private static final int MAGIC = 0x4D43504B; // "MCPK"
+
+    private static final int VERSION = 2;
+
+
+    /** Writes the dictionary and the documents, atomically replacing an existing file. */
+    static void write(Path file, Dictionary dictionary, Map<String, SimpleDoc> docs) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                dictionary.write(out);
+
+                out.writeInt(docs.size());
+                for (Map.Entry<String, SimpleDoc> entry : docs.entrySet()) {
+                    writeChars(out, entry.getKey());
+                    entry.getValue().write(out);
+                }
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /**
+     * Reads a file written by {@link #write(Path, Dictionary, Map)} into the empty dictionary.
+     *
+     * @param ids supplies the {@link SimpleDoc#id()} of each document read
+     * @param tokenStore receives the token data of the documents read, {@code null} keeps it on the heap
+     * @return the documents by id, empty if the file does not exist or has another version
+     */
+    static Map<String, SimpleDoc> read(Path file, Dictionary dictionary, IntSupplier ids, TokenStore tokenStore) {
+        Map<String, SimpleDoc> docs = new LinkedHashMap<>();
+
+        if (! Files.isRegularFile(file)) return docs;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return docs;
+
+            dictionary.read(in);
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = readChars(in);
+                docs.put(id, SimpleDoc.read(in, ids.getAsInt(), dictionary, tokenStore));
+            }
+
+            return docs;
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    static void writeInts(DataOutput out, int[] ints, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(length * 4);
+        byteBuffer.asIntBuffer().put(ints, 0, length);
+
+        out.writeInt(length);
+        out.write(byteBuffer.array());
+    }
+
+
+    static int[] readInts(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt() * 4];
+        in.readFully(bytes);
+
+        int[] ints = new int[bytes.length / 4];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(ints);
+        return ints;
+    }
+
+
+    static void writeChars(DataOutput out, CharSequence chars) throws IOException {
+        if (chars instanceof Utf8Source utf8Source) {
+            utf8Source.write(out); // already UTF-8, no need to decode
+            return;
+        }
+
+        byte[] bytes = chars.toString().getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    static String readChars(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
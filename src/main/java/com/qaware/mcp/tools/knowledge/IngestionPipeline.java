@@ -0,0 +1,296 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads, parses and indexes changed locations in three stages, each with its own threads and a bounded number of
+ * queued locations:
+ * <ol>
+ * <li>I/O: {@link Location#load()} on virtual threads,</li>
+ * <li>parsing: {@link Location#getChars()} for locations that {@link Location#needsParsing()} (Tika) on a small pool,</li>
+ * <li>indexing: {@link Location#getChars()} (or {@link Location#openReader()}) for the others plus the indexer
+ * (tokenization) on a pool sized to the cores.</li>
+ * </ol>
+ * A full stage blocks the submitting stage (back-pressure), so neither memory nor the common fork join pool, which is
+ * used for scoring, is flooded. A failing location is logged and skipped; its id is kept for {@link #drainFailed()}, so
+ * the next update can {@link Scanner#retry(java.util.Collection) retry} it even if the scan is incremental.
+ * <p>
+ * <b>Thread Safety:</b> {@link #submit(Location, Consumer)} may be called concurrently. {@link #await()} waits for all
+ * locations submitted before. Guarded by a lock instead of monitors, which would pin the carriers of the virtual I/O
+ * threads.
+ */
+final class IngestionPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    /** Success of a stage handing the location over to the next stage: the last stage signals completion. */
+    private static final Runnable CONTINUED = () -> { };
+
+    /** One stage: an executor plus a bound on the locations queued or running in it. */
+    static final class Stage {
+
+        private final String name;
+
+        private final ExecutorService executorService;
+
+        private final Semaphore permits;
+
+        private final int capacity;
+
+        private final AtomicLong completed = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong busyNanos = new AtomicLong();
+
+
+        Stage(String name, ExecutorService executorService, int capacity) {
+            this.name            = name;
+            this.executorService = executorService;
+            this.capacity        = capacity;
+            permits              = new Semaphore(capacity);
+        }
+
+
+        /**
+         * Runs the task in this stage, blocking while the stage is full. Afterwards, {@code onSuccess} or
+         * {@code onFailure} is called, also for errors and rejected tasks, so {@link IngestionPipeline#await()} never
+         * hangs.
+         */
+        void submit(Runnable task, Runnable onSuccess, Runnable onFailure) {
+            permits.acquireUninterruptibly();
+
+            try {
+                execute(task, onSuccess, onFailure);
+
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("{} rejected: {}", name, e.toString());
+
+                failed.incrementAndGet();
+                permits.release();
+
+                onFailure.run();
+            }
+        }
+
+
+        private void execute(Runnable task, Runnable onSuccess, Runnable onFailure) {
+            executorService.execute(() -> {
+                long startNanos = System.nanoTime();
+                boolean success = false;
+                try {
+                    task.run();
+                    success = true;
+
+                } catch (RuntimeException e) {
+                    LOGGER.warn("{} failed: {}", name, e.toString());
+
+                } finally {
+                    (success ? completed : failed).incrementAndGet();
+                    busyNanos.addAndGet(System.nanoTime() - startNanos);
+                    permits.release();
+
+                    (success ? onSuccess : onFailure).run();
+                }
+            });
+        }
+
+
+        String name() {
+            return name;
+        }
+
+
+        long completed() {
+            return completed.get();
+        }
+
+
+        long failed() {
+            return failed.get();
+        }
+
+
+        /** Returns the number of locations queued or running. */
+        int queued() {
+            return capacity - permits.availablePermits();
+        }
+
+
+        /** Returns the locations completed per second of busy thread time. */
+        float throughput() {
+            long nanos = busyNanos.get();
+            return nanos == 0 ? 0 : completed.get() * 1e9f / nanos;
+        }
+
+
+        @Override
+        public String toString() {
+            return name + ": " + completed() + " done, " + failed() + " failed, " + queued() + " queued, " + throughput() + "/s";
+        }
+
+    }
+
+
+    private final Stage io;
+
+    private final Stage parse;
+
+    private final Stage index;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when there are no more pending locations. */
+    private final Condition idle = lock.newCondition();
+
+    /** The locations submitted, but not yet indexed or failed. Guarded by {@link #lock}. */
+    private int pending;
+
+    /** The ids of the locations failed since the last {@link #drainFailed()}. */
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+
+    /** Creates a pipeline with defaults derived from the number of cores. */
+    IngestionPipeline() {
+        this(64, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * @param ioConcurrency maximal number of concurrent reads
+     * @param parseThreads number of threads parsing (Tika)
+     * @param indexThreads number of threads tokenizing
+     */
+    IngestionPipeline(int ioConcurrency, int parseThreads, int indexThreads) {
+        io    = new Stage("io",    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("kb-io-", 0).factory()), ioConcurrency);
+        parse = new Stage("parse", newPool("kb-parse-", parseThreads), parseThreads * 2);
+        index = new Stage("index", newPool("kb-index-", indexThreads), indexThreads * 2);
+    }
+
+
+    /** Fixed size pool of daemon threads that terminate when idle, so idle pipelines cost no threads. */
+    static ExecutorService newPool(String name, int threads) {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Thread.ofPlatform().daemon().name(name, 0).factory());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+
+    /** Loads, parses and indexes the location asynchronously. Blocks while the I/O stage is full. */
+    void submit(Location location, Consumer<CharSequence> indexer) {
+        submit(location, indexer, null);
+    }
+
+
+    /**
+     * Like {@link #submit(Location, Consumer)}, but a location offering a {@link Location#openReader()} is passed to the
+     * {@code streamingIndexer} in the index stage instead.
+     */
+    void submit(Location location, Consumer<CharSequence> indexer, Consumer<Reader> streamingIndexer) {
+        lock.lock();
+        try {
+            pending++;
+        } finally {
+            lock.unlock();
+        }
+
+        Runnable onFailure = () -> failed(location.getId());
+
+        io.submit(() -> {
+            location.load();
+
+            if (location.needsParsing()) {
+                parse.submit(() -> {
+                    CharSequence chars = location.getChars();
+                    index.submit(() -> indexer.accept(chars), this::done, onFailure);
+                }, CONTINUED, onFailure);
+            } else {
+                index.submit(() -> index(location, indexer, streamingIndexer), this::done, onFailure);
+            }
+        }, CONTINUED, onFailure);
+    }
+
+
+    private static void index(Location location, Consumer<CharSequence> indexer, Consumer<Reader> streamingIndexer) {
+        Reader reader = streamingIndexer == null ? null : location.openReader();
+
+        if (reader == null) {
+            indexer.accept(location.getChars());
+            return;
+        }
+
+        try (reader) {
+            streamingIndexer.accept(reader);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /** Waits until all locations submitted before are indexed or failed. */
+    void await() {
+        lock.lock();
+        try {
+            while (pending > 0) idle.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /** Returns and forgets the ids of the locations failed since the last call. */
+    List<String> drainFailed() {
+        List<String> ids = new ArrayList<>(failed);
+        failed.removeAll(ids);
+        return ids;
+    }
+
+
+    List<Stage> stages() {
+        return List.of(io, parse, index);
+    }
+
+
+    @Override
+    public String toString() {
+        return io + "; " + parse + "; " + index;
+    }
+
+
+    private void failed(String id) {
+        failed.add(id);
+        done();
+    }
+
+
+    private void done() {
+        lock.lock();
+        try {
+            if (--pending == 0) idle.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
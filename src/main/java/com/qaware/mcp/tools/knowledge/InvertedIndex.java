@@ -0,0 +1,361 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * Corpus level inverted index: token id → postings (document id + positions), so that scoring a term only touches the
+ * documents containing it.
+ * <p>
+ * The postings of a token are a byte array of varints. Per document: the zigzag encoded delta to the previous document
+ * id, the number of positions, the number of bytes of the positions (so {@link #bound} can skip them) and the positions
+ * in descending order (first absolute, then as deltas). Positions are
+ * stored as {@link SimpleDoc#firstPos(int)}, in the same order as {@link SimpleDoc#addScore(float[], int, float)} visits
+ * them, so both scoring paths give identical results.
+ * <p>
+ * A query reads the postings of its terms once: {@link #bound} sums the upper bounds of the documents and remembers
+ * where their positions are, {@link #score(Matches, int, Scores)} then decodes the positions of the documents which
+ * are not pruned.
+ * <p>
+ * <b>Thread Safety:</b> Writers are synchronized. Readers are lock-free: postings are append-only and published as
+ * immutable {@link Postings} objects, so a reader always sees a consistent prefix. Readers only score documents of
+ * their own snapshot, so documents added or removed after the snapshot was taken are ignored. Removed documents stay
+ * in the postings until {@link #compact()} rewrites them. A query still running on an older snapshot then misses the
+ * just removed documents, which is what a query started a moment later would see anyway.
+ */
+final class InvertedIndex {
+
+    /** A consistent view of the postings of one token. Bytes below {@code length} are never modified. */
+    private static final class Postings {
+
+        final byte[] bytes;
+
+        final int length;
+
+        final int lastDocId;
+
+
+        Postings(byte[] bytes, int length, int lastDocId) {
+            this.bytes     = bytes;
+            this.length    = length;
+            this.lastDocId = lastDocId;
+        }
+
+    }
+
+
+    /**
+     * The postings entries of the terms of one query in the documents of its snapshot, found by {@link #bound}. Grouped
+     * by document, in term order within a document. Immutable.
+     */
+    static final class Matches {
+
+        /** The postings of each query term, {@code null} for terms without postings. */
+        private final byte[][] bytes;
+
+        private final float[] weights;
+
+        /** The indexes of the documents with entries, ascending. */
+        private final int[] docs;
+
+        /** The first entry of each document in {@link #docs}, plus the number of entries. */
+        private final int[] starts;
+
+        /** The query term of each entry. */
+        private final int[] terms;
+
+        /** The offset of the position count of each entry in the postings of its term. */
+        private final int[] offsets;
+
+
+        private Matches(byte[][] bytes, float[] weights, IntArrayList docs, IntArrayList terms, IntArrayList offsets) {
+            this.bytes   = bytes;
+            this.weights = weights;
+
+            long[] sorted = new long[docs.size()];
+            for (int i = 0; i < sorted.length; i++) sorted[i] = (long) docs.get(i) << 32 | i;
+
+            Arrays.sort(sorted); // by document, the entries of a document stay in term order
+
+            IntArrayList uniqueDocs = new IntArrayList();
+            IntArrayList docStarts  = new IntArrayList();
+
+            this.terms   = new int[sorted.length];
+            this.offsets = new int[sorted.length];
+
+            for (int i = 0; i < sorted.length; i++) {
+                int doc   = (int) (sorted[i] >>> 32);
+                int entry = (int) sorted[i];
+
+                if (uniqueDocs.isEmpty() || uniqueDocs.get(uniqueDocs.size() - 1) != doc) {
+                    uniqueDocs.add(doc);
+                    docStarts.add(i);
+                }
+
+                this.terms[i]   = terms.get(entry);
+                this.offsets[i] = offsets.get(entry);
+            }
+
+            docStarts.add(sorted.length);
+
+            this.docs = uniqueDocs.toArray();
+            starts    = docStarts.toArray();
+        }
+
+    }
+
+
+    private static final Postings EMPTY = new Postings(new byte[0], 0, 0);
+
+    private volatile Postings[] postings = new Postings[1024];
+
+    private final IntHashSet removed = new IntHashSet();
+
+    private long livePositions;
+
+    private long removedPositions;
+
+
+    /** Adds the postings of all tokens of the document. */
+    synchronized void add(SimpleDoc doc) {
+        int docId = doc.id();
+
+        byte[][] buffer = { new byte[64] };
+        byte[][] positions = { new byte[64] };
+
+        doc.forEachToken((tokenId, lastPos) -> {
+            int count = 0;
+            int positionsLength = 0;
+            int previous = 0;
+            for (int pos = lastPos; pos != SimpleDoc.NOT_FOUND; pos = doc.previousPos(pos)) {
+                int firstPos = doc.firstPos(pos);
+                positionsLength = writeVInt(positions, positionsLength, pos == lastPos ? firstPos : previous - firstPos);
+                previous = firstPos;
+                count++;
+            }
+
+            Postings old = get(tokenId);
+
+            int length = writeVInt(buffer, 0, zigZag(docId - old.lastDocId));
+            length = writeVInt(buffer, length, count);
+            length = writeVInt(buffer, length, positionsLength);
+            length = ensureCapacity(buffer, length, positionsLength);
+            System.arraycopy(positions[0], 0, buffer[0], length, positionsLength);
+            length += positionsLength;
+
+            set(tokenId, append(old, buffer[0], length, docId));
+        });
+
+        livePositions += doc.size();
+    }
+
+
+    /** Marks the document as removed. Its postings are dropped by the next {@link #compact()}. */
+    synchronized void remove(SimpleDoc doc) {
+        if (! removed.add(doc.id())) return;
+
+        livePositions    -= doc.size();
+        removedPositions += doc.size();
+    }
+
+
+    /** Returns true if removed documents make up more than half of the postings, so {@link #compact()} is worth it. */
+    synchronized boolean needsCompaction() {
+        return removedPositions > livePositions;
+    }
+
+
+    /** Rewrites all postings without the removed documents. */
+    synchronized void compact() {
+        Postings[] current = postings;
+        Postings[] compacted = new Postings[current.length];
+
+        byte[][] buffer = { new byte[64] };
+
+        for (int tokenId = 0; tokenId < current.length; tokenId++) {
+            Postings old = current[tokenId];
+            if (old == null) continue;
+
+            int length    = 0;
+            int lastDocId = 0;
+            int docId     = 0;
+
+            for (int[] offset = { 0 }; offset[0] < old.length;) {
+                docId += unZigZag(readVInt(old.bytes, offset));
+
+                int begin = offset[0];
+                readVInt(old.bytes, offset); // count
+                int positionsLength = readVInt(old.bytes, offset);
+                offset[0] += positionsLength;
+
+                if (removed.contains(docId)) continue;
+
+                length = writeVInt(buffer, length, zigZag(docId - lastDocId));
+                length = ensureCapacity(buffer, length, offset[0] - begin);
+                System.arraycopy(old.bytes, begin, buffer[0], length, offset[0] - begin);
+                length += offset[0] - begin;
+
+                lastDocId = docId;
+            }
+
+            if (length > 0) compacted[tokenId] = new Postings(Arrays.copyOf(buffer[0], length), length, lastDocId);
+        }
+
+        postings = compacted;
+
+        removed.clear();
+        removedPositions = 0;
+    }
+
+
+    /**
+     * Adds the weight of each query term times its {@link SimpleDoc#impact(int)} to the upper bound of each document of
+     * the snapshot containing it, see {@link Scores#addBound(int, float)}. Skips the positions, so a frequent term costs
+     * one step per document instead of one per occurrence, but returns where they are for
+     * {@link #score(Matches, int, Scores)}.
+     *
+     * @param tokenIds the dictionary ids of the query terms
+     * @param weights the score of each query term
+     * @param ordinals maps the document ids of the snapshot to their index in {@code docs}
+     */
+    Matches bound(int[] tokenIds, float[] weights, IntIntHashMap ordinals, SimpleDoc[] docs, Scores scores) {
+        Postings[] current = postings;
+
+        byte[][] bytes = new byte[tokenIds.length][];
+
+        IntArrayList matchDocs    = new IntArrayList();
+        IntArrayList matchTerms   = new IntArrayList();
+        IntArrayList matchOffsets = new IntArrayList();
+
+        for (int t = 0; t < tokenIds.length; t++) {
+            int tokenId = tokenIds[t];
+            if (tokenId >= current.length || current[tokenId] == null) continue;
+
+            Postings tokenPostings = current[tokenId];
+            bytes[t] = tokenPostings.bytes;
+
+            int docId = 0;
+            for (int[] offset = { 0 }; offset[0] < tokenPostings.length;) {
+                docId += unZigZag(readVInt(bytes[t], offset));
+
+                int begin = offset[0];
+                readVInt(bytes[t], offset); // count
+                int positionsLength = readVInt(bytes[t], offset);
+                offset[0] += positionsLength;
+
+                int ordinal = ordinals.getOrDefault(docId, SimpleDoc.NOT_FOUND);
+                if (ordinal == SimpleDoc.NOT_FOUND) continue; // removed or added after the snapshot
+
+                scores.addBound(ordinal, weights[t] * docs[ordinal].impact(tokenId));
+
+                matchDocs.add(ordinal);
+                matchTerms.add(t);
+                matchOffsets.add(begin);
+            }
+        }
+
+        return new Matches(bytes, weights, matchDocs, matchTerms, matchOffsets);
+    }
+
+
+    /**
+     * Adds the weight of each query term to all its positions in the document with the given index, decoded from the
+     * postings found by {@link #bound}. Different documents may be scored concurrently.
+     */
+    void score(Matches matches, int doc, Scores scores) {
+        int index = Arrays.binarySearch(matches.docs, doc);
+        if (index < 0) return;
+
+        for (int entry = matches.starts[index]; entry < matches.starts[index + 1]; entry++) {
+            byte[] bytes = matches.bytes[matches.terms[entry]];
+            float score  = matches.weights[matches.terms[entry]];
+
+            int[] offset = { matches.offsets[entry] };
+            int count = readVInt(bytes, offset);
+            readVInt(bytes, offset); // length of the positions
+
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                int value = readVInt(bytes, offset);
+                pos = i == 0 ? value : pos - value;
+                scores.add(doc, pos, score);
+            }
+        }
+    }
+
+
+    private Postings get(int tokenId) {
+        Postings[] current = postings;
+        Postings old = tokenId < current.length ? current[tokenId] : null;
+        return old == null ? EMPTY : old;
+    }
+
+
+    private void set(int tokenId, Postings tokenPostings) {
+        Postings[] current = postings;
+
+        if (tokenId >= current.length) {
+            current = Arrays.copyOf(current, Math.max(tokenId + 1, current.length * 3 / 2));
+            current[tokenId] = tokenPostings;
+            postings = current; // publish the grown array only after it is fully populated
+        } else {
+            current[tokenId] = tokenPostings;
+        }
+    }
+
+
+    /** Appends to the postings. The existing array is reused if it has room: readers never look beyond their length. */
+    private static Postings append(Postings old, byte[] bytes, int length, int docId) {
+        byte[] target = old.bytes;
+
+        if (old.length + length > target.length) target = Arrays.copyOf(target, (old.length + length) * 3 / 2 + 8);
+
+        System.arraycopy(bytes, 0, target, old.length, length);
+
+        return new Postings(target, old.length + length, docId);
+    }
+
+
+    private static int writeVInt(byte[][] buffer, int offset, int value) {
+        offset = ensureCapacity(buffer, offset, 5);
+
+        byte[] bytes = buffer[0];
+        while ((value & ~0x7F) != 0) {
+            bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+
+        return offset;
+    }
+
+
+    private static int ensureCapacity(byte[][] buffer, int offset, int length) {
+        if (offset + length > buffer[0].length) buffer[0] = Arrays.copyOf(buffer[0], (offset + length) * 2);
+        return offset;
+    }
+
+
+    private static int readVInt(byte[] bytes, int[] offset) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = bytes[offset[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
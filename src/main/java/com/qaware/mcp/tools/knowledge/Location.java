@@ -1,11 +1,35 @@
 package com.qaware.mcp.tools.knowledge;
 
+import java.io.Reader;
+
+import com.qaware.mcp.tools.knowledge.nlp.Tokens;
+
 interface Location {
 
+    /** Version reported by incremental scans for a location that no longer exists. */
+    long DELETED = Long.MIN_VALUE;
+
     String getId();
 
     long getVersion();
 
     CharSequence getChars();
 
+    /** Performs the I/O needed by {@link #getChars()} (e.g. reading the file), so it can run on an I/O thread. */
+    default void load() {
+    }
+
+    /** Returns true if {@link #getChars()} needs expensive parsing (e.g. Tika) beyond decoding the loaded bytes. */
+    default boolean needsParsing() {
+        return false;
+    }
+
+    /**
+     * Returns a reader for a text too large to be held as chars, which is then tokenized while reading (see
+     * {@link Tokens#reset(Reader, Appendable)}), or {@code null} to use {@link #getChars()}. The caller closes it.
+     */
+    default Reader openReader() {
+        return null;
+    }
+
 }
@@ -1,6 +1,11 @@
 package com.qaware.mcp.tools.knowledge;
 
+import java.util.List;
+import java.util.Locale;
+
+import com.qaware.mcp.McpCompletion;
 import com.qaware.mcp.McpParam;
+import com.qaware.mcp.McpPrompt;
 import com.qaware.mcp.McpTool;
 import com.qaware.mcp.tools.Config;
 
@@ -25,14 +30,67 @@ slurp "C:/Viechtbauer/Zeugs/Docs/Maya/Gillespie-Maya-Kings-Body.pdf"
 */
 public class McpKnowledgeTool {
 
-    private final Corpus corpus = new Corpus(new FileSystemScanner(Config.get(Config.ROOT, ".").split(";")));
+    /** {@code null} in coordinator mode. */
+    private final Corpus corpus;
+
+    /** {@code null} unless the knowledge base is served by shard servers. */
+    private final Coordinator coordinator;
+
+    /** {@code null} unless the corpus is served to a coordinator. */
+    private final ShardServer shardServer;
 
     private final int limit = Config.getInt(Config.MAX_CONTENT, 3000);
 
 
+    public McpKnowledgeTool() {
+        String shardServers = Config.get(Config.SHARD_SERVERS);
+
+        coordinator = shardServers == null ? null : new Coordinator(shardServers.split(";"));
+        corpus      = coordinator != null ? null : newCorpus();
+
+        shardServer = corpus == null || Config.get(Config.SHARD_PORT) == null ? null
+                : new ShardServer(corpus, Config.get(Config.SHARD_HOST), Config.getInt(Config.SHARD_PORT, 0)).start();
+
+        if (shardServer != null) Runtime.getRuntime().addShutdownHook(new Thread(shardServer::close, "shard-server-shutdown"));
+    }
+
+
+    private static Corpus newCorpus() {
+        return new Corpus(new FileSystemScanner(Config.getBoolean(Config.WATCH, false), Config.get(Config.ROOT, ".").split(";"))
+                        .extractionCache(openExtractionCache()))
+                .invertedIndex(Config.getBoolean(Config.INVERTED_INDEX, false))
+                .shards(Config.getInt(Config.SHARDS, 1))
+                .dictionaryCompaction(Config.getInt(Config.DICTIONARY_COMPACTION, 0))
+                .sparseScores(Config.getBoolean(Config.SPARSE_SCORES, false))
+                .smoothing(Smoothing.valueOf(Config.get(Config.SMOOTHING, "kernel").trim().toUpperCase(Locale.ROOT)))
+                .tokenStore(Config.get(Config.MMAP_DIR))
+                .indexFile(Config.get(Config.INDEX_FILE))
+                .resultCache(Config.getInt(Config.CACHE_ENTRIES, 256), Config.getInt(Config.CACHE_MEMORY, 16) * 1024L * 1024L);
+    }
+
+
+    /** Returns the {@link ExtractionCache} shared by the knowledge and the slurp tool, {@code null} if not configured. */
+    static ExtractionCache openExtractionCache() {
+        return ExtractionCache.open(Config.get(Config.EXTRACTION_CACHE_DIR), Config.getInt(Config.EXTRACTION_CACHE_SIZE, 512) * 1024L * 1024L);
+    }
+
+
     @McpTool("A helpful glossary / knowledge database / knowledge db you can query for terms or concepts. If you encounter a word term you do not know exactly or want to get some information, ALWAYS query the knowledge base first - example: query='<term>'.")
-    private String query(@McpParam(name = "query", description = "the query for the information - separate the terms by space. Initially, only query for specific terms only, translate terms into both German and English if possible. Only if the initial search does not yield any result, search a second time using synonyms.") String query) {
-        return corpus.getPassages(query, limit);
+    private String query(@McpParam(name = "query", description = "the query for the information - separate the terms by space. Initially, only query for specific terms only, translate terms into both German and English if possible. Only if the initial search does not yield any result, search a second time using synonyms. A term ending with * matches all terms starting with it, e.g. 'kafka* consum*'.") String query) {
+        return coordinator != null ? coordinator.getPassages(query, limit) : corpus.getPassages(query, limit);
+    }
+
+
+    @McpPrompt("Passages of the knowledge base about the given terms. A term ending with * matches all terms starting with it.")
+    private String knowledge(@McpParam(name = "query", description = "the terms to look up, separated by space") String query) {
+        return query(query);
+    }
+
+
+    /** Completes the last word of the query with the words of the knowledge base. Not in coordinator mode. */
+    @McpCompletion("knowledge")
+    private List<String> completeKnowledge(@McpParam(name = "query") String query) {
+        return corpus == null || query == null ? List.of() : corpus.complete(query, McpCompletion.MAX_VALUES);
     }
 
 }
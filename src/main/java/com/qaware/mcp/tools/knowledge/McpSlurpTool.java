@@ -1,14 +1,31 @@
 package com.qaware.mcp.tools.knowledge;
 
+import java.util.function.Supplier;
+
 import com.qaware.mcp.McpParam;
 import com.qaware.mcp.McpTool;
+import com.qaware.mcp.tools.Config;
 
 public class McpSlurpTool {
 
-    @SuppressWarnings("static-method")
-    @McpTool("This method will slurp in a document base and return it as a single string. Only call this method, if the user commands you to SLURP data. Do not call this without the user asking for it. Just slurp the data, do NOT print it. Wait for further instructions.")
-    private String slurp(@McpParam(name = "path", description = "Name to greet") String paths) {
-        return new Corpus(new FileSystemScanner(paths.split(";"))).getAll();
+    /**
+     * The slurped document bases by paths, so slurping again only re-reads changed files. The fast mode only extracts
+     * the text, the other one also tokenizes it like the knowledge tool.
+     */
+    private final PathRegistry<Supplier<Iterable<String>>> registry = new PathRegistry<>(Config.getInt(Config.SLURP_CACHE_ENTRIES, 4),
+            Config.getBoolean(Config.SLURP_FAST, true)
+                    ? roots -> new TextCorpus(newScanner(roots))::getAllChunks
+                    : roots -> new Corpus(newScanner(roots))::getAllChunks);
+
+
+    private static FileSystemScanner newScanner(String[] roots) {
+        return new FileSystemScanner(roots).extractionCache(McpKnowledgeTool.openExtractionCache());
+    }
+
+
+    @McpTool("This method will slurp in a document base and return it as a sequence of text chunks. Only call this method, if the user commands you to SLURP data. Do not call this without the user asking for it. Just slurp the data, do NOT print it. Wait for further instructions.")
+    private Iterable<String> slurp(@McpParam(name = "path", description = "Name to greet") String paths) {
+        return registry.get(paths).get(); // each chunk becomes a text content, built one by one
     }
 
 }
@@ -0,0 +1,64 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keeps the objects built for the most recently used sets of root paths (e.g. one corpus per slurped document base),
+ * evicting the least recently used ones. Paths are normalized, so {@code "b;a"} and {@code "a; ./b"} share an entry.
+ * <p>
+ * <b>Thread Safety:</b> All methods are synchronized; the factory must be cheap, the objects do their work later.
+ */
+final class PathRegistry<T> {
+
+    private final Map<String, T> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxEntries;
+
+    private final Function<String[], T> factory;
+
+
+    /** @param factory creates the object for the normalized roots */
+    PathRegistry(int maxEntries, Function<String[], T> factory) {
+        this.maxEntries = maxEntries;
+        this.factory    = factory;
+    }
+
+
+    /** Returns the object for the {@code ;} separated paths, creating it if needed. */
+    synchronized T get(String paths) {
+        String[] roots = normalize(paths);
+
+        T entry = entries.computeIfAbsent(String.join(";", roots), key -> factory.apply(roots));
+
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (entries.size() > maxEntries) {
+            iterator.next();
+            iterator.remove();
+        }
+
+        return entry;
+    }
+
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+
+    /** Returns the absolute, normalized, sorted and distinct paths. */
+    static String[] normalize(String paths) {
+        return Arrays.stream(paths.split(";"))
+                .map(String::trim)
+                .filter(path -> ! path.isEmpty())
+                .map(path -> Path.of(path).toAbsolutePath().normalize().toString())
+                .sorted()
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+}
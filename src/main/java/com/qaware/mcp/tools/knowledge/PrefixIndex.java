@@ -0,0 +1,91 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.stream.IntStream;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+/**
+ * The IDs of the words of a {@link Dictionary} sorted by their UTF-8 bytes, so all words starting with a prefix are
+ * found by a binary search, see {@link Dictionary#startingWith(String, int)}. The bytes are compared in the arena of
+ * the dictionary, nothing is decoded, the index itself costs 4 bytes per word.
+ * <p>
+ * Maintained incrementally, but lazily, so adding words costs nothing: a lookup first sorts the words added since the
+ * last one into a small tail, which is merged into the main array once it holds more than 1/8 of its words. So each
+ * word is merged a few times at most, and a lookup costs two binary searches.
+ * <p>
+ * <b>Thread Safety:</b> Thread-safe, lookups are synchronized.
+ */
+final class PrefixIndex {
+
+    private static final int MIN_TAIL_SIZE = 1024;
+
+    private final Dictionary dictionary;
+
+    private int[] sorted = {};
+
+    /** The words added since the last merge, sorted as well. */
+    private int[] tail = {};
+
+    /** The IDs below are indexed. */
+    private int indexed;
+
+
+    PrefixIndex(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+
+    /** Returns up to {@code max} IDs of the words starting with the UTF-8 bytes of the prefix, sorted ones first. */
+    synchronized int[] find(byte[] prefix, int max) {
+        update();
+
+        IntArrayList ids = new IntArrayList();
+        find(sorted, prefix, max, ids);
+        find(tail, prefix, max, ids);
+        return ids.toArray();
+    }
+
+
+    /** Indexes the words added in the meantime, up to the first one still being added. */
+    private void update() {
+        int end = indexed;
+        while (end < dictionary.size() && dictionary.contains(end)) end++;
+
+        if (end == indexed) return;
+
+        int[] added = IntStream.range(indexed, end).boxed().sorted(dictionary::compare).mapToInt(Integer::intValue).toArray();
+        tail    = merge(tail, added);
+        indexed = end;
+
+        if (tail.length > Math.max(MIN_TAIL_SIZE, sorted.length / 8)) {
+            sorted = merge(sorted, tail);
+            tail   = new int[0];
+        }
+    }
+
+
+    private int[] merge(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++) {
+            merged[k] = j == b.length || i < a.length && dictionary.compare(a[i], b[j]) <= 0 ? a[i++] : b[j++];
+        }
+
+        return merged;
+    }
+
+
+    private void find(int[] ids, byte[] prefix, int max, IntArrayList found) {
+        int low  = 0;
+        int high = ids.length;
+        while (low < high) { // the first word not below the prefix
+            int mid = low + high >>> 1;
+            if (dictionary.comparePrefix(ids[mid], prefix) < 0) low = mid + 1; else high = mid;
+        }
+
+        for (int i = low; i < ids.length && found.size() < max && dictionary.comparePrefix(ids[i], prefix) == 0; i++) found.add(ids[i]);
+    }
+
+}
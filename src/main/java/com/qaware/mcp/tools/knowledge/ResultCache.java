@@ -0,0 +1,146 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache for query results. A result is keyed by the normalized query (the hashes of its tokens after the
+ * {@link Linguistic} filter, so case, stop words and inflections do not matter), the limit and the generation of the
+ * corpus it was computed on. Each change of the corpus yields a new generation, so stale results are never served; they
+ * are evicted like any other unused entry.
+ * <p>
+ * Bounded by the number of entries and by the (estimated) memory of the cached results.
+ * <p>
+ * <b>Thread Safety:</b> All methods are synchronized.
+ */
+final class ResultCache {
+
+    /** Estimated overhead of an entry in bytes: key, map entry and string headers. */
+    private static final long ENTRY_BYTES = 128;
+
+    private final Map<Key, String> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private long bytes;
+
+    private long hits;
+
+    private long misses;
+
+
+    /** The key of a result. Immutable. */
+    static final class Key {
+
+        private final long[] hashes;
+
+        private final int limit;
+
+        private final long generation;
+
+        private final int hashCode;
+
+
+        Key(long[] hashes, int limit, long generation) {
+            this.hashes     = hashes;
+            this.limit      = limit;
+            this.generation = generation;
+
+            hashCode = 31 * (31 * Arrays.hashCode(hashes) + limit) + Long.hashCode(generation);
+        }
+
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Key key
+                    && limit == key.limit && generation == key.generation && Arrays.equals(hashes, key.hashes);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+
+    /**
+     * @param maxEntries maximal number of cached results
+     * @param maxBytes maximal estimated memory of the cached results
+     */
+    ResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes   = maxBytes;
+    }
+
+
+    /** Returns the cached result or {@code null}. */
+    synchronized String get(Key key) {
+        String result = results.get(key);
+
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return result;
+    }
+
+
+    /** Caches the result, evicting the least recently used ones if a bound is exceeded. Results too large are not cached. */
+    synchronized void put(Key key, String result) {
+        long size = bytes(key, result);
+        if (size > maxBytes) return;
+
+        String old = results.put(key, result);
+        if (old != null) bytes -= bytes(key, old);
+        bytes += size;
+
+        Iterator<Map.Entry<Key, String>> iterator = results.entrySet().iterator();
+        while (results.size() > maxEntries || bytes > maxBytes) {
+            Map.Entry<Key, String> eldest = iterator.next();
+            bytes -= bytes(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+
+    synchronized int size() {
+        return results.size();
+    }
+
+
+    /** Returns the estimated memory of the cached results in bytes. */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+
+    synchronized long hits() {
+        return hits;
+    }
+
+
+    synchronized long misses() {
+        return misses;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return results.size() + " results, " + bytes / 1024 + "KB, " + hits + "/" + lookups + " hits";
+    }
+
+
+    private static long bytes(Key key, String result) {
+        return ENTRY_BYTES + 8L * key.hashes.length + 2L * result.length();
+    }
+
+}
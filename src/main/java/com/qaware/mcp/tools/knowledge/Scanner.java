@@ -0,0 +1,33 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Feeds {@link Location}s into a {@link Corpus}.
+ * <p>
+ * A scan either reports all existing locations (a full scan) or only the locations that changed since the previous
+ * scan (an incremental scan). In the latter case, removed locations are reported with version {@link Location#DELETED}.
+ */
+interface Scanner {
+
+    /**
+     * Reports locations to the given consumer.
+     * <p>
+     * All calls to {@code locationConsumer.accept(location)} must happen-before this method returns. They may be
+     * dispatched from multiple threads concurrently, but no callback may execute after this method has returned.
+     *
+     * @return {@code true} if all existing locations were reported (the corpus drops every location not reported),
+     *         {@code false} if only changed and deleted locations were reported
+     */
+    boolean scan(Consumer<Location> locationConsumer);
+
+
+    /**
+     * Reports the locations again with the next scan, even if they did not change, e.g. because they failed to load. A
+     * full scan reports them anyway.
+     */
+    default void retry(Collection<String> ids) {
+    }
+
+}
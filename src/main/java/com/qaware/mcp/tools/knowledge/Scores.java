@@ -0,0 +1,247 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+/**
+ * Per query scratch space holding the scores of all positions of all documents of a corpus snapshot.
+ * <p>
+ * Dense mode ({@link #reset(SimpleDoc[])}) holds a {@code float[]} per document with one entry per position. Sparse
+ * mode ({@link #resetSparse(SimpleDoc[])}) holds {@link SparseScores} for the documents with hits only, so the query
+ * cost scales with the number of hits instead of the corpus size. Both give identical results.
+ * <p>
+ * In both modes, each document containing query terms first gets an upper bound of its maximal smoothed score
+ * ({@link #addBound(int, float)}), so that only the documents which may reach the selection need to be scored.
+ * <p>
+ * Not thread-safe: each query uses its own instance, except that different documents may be scored concurrently.
+ * Instances are meant to be recycled, the arrays are reused as long as the document sizes do not change.
+ */
+final class Scores {
+
+    private static final float[] EMPTY = {};
+
+    private float[][] scores = {};
+
+    private SparseScores[] sparseScores = {};
+
+    private final IntArrayList hitDocs = new IntArrayList();
+
+    private boolean sparse;
+
+    private int[] allDocs = {};
+
+    private float[] maxScores = {};
+
+    private float[] bounds = {};
+
+    /** The documents with a bound. */
+    private final IntArrayList candidates = new IntArrayList();
+
+
+    /** Prepares zeroed score arrays for the given documents. */
+    Scores reset(SimpleDoc[] docs) {
+        sparse = false;
+
+        if (scores.length != docs.length) scores = Arrays.copyOf(scores, docs.length);
+
+        for (int i = 0; i < docs.length; i++) {
+            int size = docs[i].size();
+
+            if (scores[i] == null || scores[i].length != size) {
+                scores[i] = size == 0 ? EMPTY : new float[size];
+            } else {
+                Arrays.fill(scores[i], 0);
+            }
+        }
+
+        if (allDocs.length != docs.length) allDocs = IntStream.range(0, docs.length).toArray();
+
+        // all documents are visited, the ones not scored must not keep the maximal scores of the last query
+        if (maxScores.length < docs.length) maxScores = new float[docs.length];
+        Arrays.fill(maxScores, 0);
+
+        resetBounds(docs.length);
+
+        return this;
+    }
+
+
+    /** Prepares empty sparse scores for the given documents. Only the documents hit by the last query are cleared. */
+    Scores resetSparse(SimpleDoc[] docs) {
+        sparse = true;
+
+        for (int i = 0; i < hitDocs.size(); i++) sparseScores[hitDocs.get(i)].clear();
+        hitDocs.clear();
+
+        if (sparseScores.length != docs.length) sparseScores = Arrays.copyOf(sparseScores, docs.length);
+
+        resetBounds(docs.length);
+
+        return this;
+    }
+
+
+    private void resetBounds(int docs) {
+        if (bounds.length != docs) {
+            bounds = new float[docs];
+        } else {
+            for (int i = 0; i < candidates.size(); i++) bounds[candidates.get(i)] = 0;
+        }
+
+        candidates.clear();
+    }
+
+
+    /**
+     * Adds to the upper bound of the maximal smoothed score of the document with the given index: the query score of a
+     * term times its {@link SimpleDoc#impact(int)}. Not thread-safe.
+     */
+    void addBound(int doc, float bound) {
+        if (bound <= 0) return;
+
+        if (bounds[doc] == 0) candidates.add(doc);
+        bounds[doc] += bound;
+    }
+
+
+    /**
+     * Sets the upper bound of the document with the given index like {@link #addBound(int, float)}, as a whole.
+     * Different documents may be set concurrently, {@link #collectBounds()} must follow.
+     */
+    void setBound(int doc, float bound) {
+        bounds[doc] = Math.max(bound, 0);
+    }
+
+
+    /** Makes the documents with a bound set by {@link #setBound(int, float)} candidates. Not thread-safe. */
+    void collectBounds() {
+        for (int i = 0; i < bounds.length; i++) {
+            if (bounds[i] > 0) candidates.add(i);
+        }
+    }
+
+
+    float bound(int doc) {
+        return bounds[doc];
+    }
+
+
+    /** Returns the indexes of the documents with a bound, ordered by descending bound. */
+    int[] candidates() {
+        long[] sorted = new long[candidates.size()];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = (long) Float.floatToIntBits(bounds[candidates.get(i)]) << 32 | candidates.get(i);
+
+        Arrays.sort(sorted); // bounds are positive, so their bits are ordered like their values
+
+        int[] ordered = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) ordered[i] = (int) sorted[sorted.length - 1 - i];
+        return ordered;
+    }
+
+
+    /** Returns the dense scores of the document with the given index. */
+    float[] get(int doc) {
+        return scores[doc];
+    }
+
+
+    /** Adds {@code score} to all positions of the token in the document with the given index. */
+    void add(int doc, SimpleDoc simpleDoc, int tokenId, float score) {
+        if (! sparse) {
+            simpleDoc.addScore(scores[doc], tokenId, score);
+            return;
+        }
+
+        for (int pos = simpleDoc.lastPos(tokenId); pos != SimpleDoc.NOT_FOUND; pos = simpleDoc.previousPos(pos)) {
+            add(doc, simpleDoc.firstPos(pos), score);
+        }
+    }
+
+
+    /** Adds {@code score} at a single position of the document with the given index. */
+    void add(int doc, int pos, float score) {
+        if (! sparse) {
+            SimpleDoc.addPositionScore(scores[doc], pos, score);
+            return;
+        }
+
+        SparseScores docScores = sparseScores[doc];
+        if (docScores == null) sparseScores[doc] = docScores = new SparseScores();
+
+        if (docScores.isEmpty()) {
+            synchronized (hitDocs) {
+                hitDocs.add(doc);
+            }
+        }
+
+        docScores.add(pos, score);
+    }
+
+
+    /** Returns the indexes of the documents to smooth, threshold and append in ascending order: all in dense mode. */
+    int[] docs() {
+        if (! sparse) return allDocs;
+
+        int[] docs = hitDocs.toArray();
+        Arrays.sort(docs);
+        return docs;
+    }
+
+
+    /**
+     * Smooths the scores of the given documents, see {@link SimpleDoc#smooth(float[], Smoothing)}.
+     *
+     * @param parallel spread the documents over the common pool
+     */
+    void smooth(SimpleDoc[] docs, int[] indexes, Smoothing smoothing, boolean parallel) {
+        if (maxScores.length < docs.length) maxScores = new float[docs.length];
+
+        IntStream stream = Arrays.stream(indexes);
+        (parallel ? stream.parallel() : stream).forEach(i -> {
+            if (sparse) {
+                sparseScores[i].smooth(docs[i].size(), smoothing);
+                maxScores[i] = sparseScores[i].max();
+            } else {
+                maxScores[i] = SimpleDoc.smooth(scores[i], smoothing);
+            }
+        });
+    }
+
+
+    /** Returns the maximal smoothed score of the document with the given index. */
+    float maxScore(int doc) {
+        return maxScores[doc];
+    }
+
+
+    /** Adds the scores of the document to the selection. */
+    void update(int doc, SimpleDoc simpleDoc, TopScores topScores) {
+        if (sparse) {
+            simpleDoc.update(sparseScores[doc], topScores);
+        } else {
+            simpleDoc.update(scores[doc], topScores);
+        }
+    }
+
+
+    /** Appends the passages of the document made of selected positions. */
+    void append(int doc, SimpleDoc simpleDoc, Appendable appendable, TopScores topScores, String file) {
+        if (sparse) {
+            simpleDoc.append(appendable, sparseScores[doc], topScores, file);
+        } else {
+            simpleDoc.append(appendable, scores[doc], topScores, file);
+        }
+    }
+
+
+    /** Returns true if any position of the document has a positive score. */
+    boolean hasHits(int doc) {
+        if (sparse) return sparseScores[doc].size() > 0;
+
+        for (float score : scores[doc]) if (score > 0) return true;
+        return false;
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * One partition of the documents of a {@link Corpus}, see {@link Corpus#shards(int)}. Each shard has its own inverted
+ * index, scoring scratch space and snapshot, so the shards are scored concurrently, and a change only rebuilds the
+ * snapshot of the shard it affects.
+ * <p>
+ * A query is scattered to all shards, each selects its own top scores ({@link #score}). Merged, they give exactly the
+ * global selection: every score of the global top k is among the top k of its shard.
+ * <p>
+ * <b>Thread Safety:</b> Like {@link Corpus}: updates of the inverted index are serialized, queries score immutable
+ * snapshots with their own recycled {@link Scores}.
+ */
+final class Shard {
+
+    /** The documents of a shard at one point in time, sorted by id. Immutable. */
+    static final class Snapshot {
+
+        final String[] ids;
+
+        final SimpleDoc[] docs;
+
+        /** Maps {@link SimpleDoc#id()} to the index in {@link #docs}, only needed for the inverted index. */
+        final IntIntHashMap ordinals;
+
+        /** Total length of all documents in chars. */
+        final int length;
+
+
+        Snapshot(String[] ids, SimpleDoc[] docs, boolean withOrdinals) {
+            this.ids  = ids;
+            this.docs = docs;
+
+            ordinals = withOrdinals ? new IntIntHashMap(docs.length) : null;
+            if (withOrdinals) for (int i = 0; i < docs.length; i++) ordinals.put(docs[i].id(), i);
+
+            int sum = 0;
+            for (SimpleDoc doc : docs) sum += doc.length();
+            length = sum;
+        }
+
+    }
+
+
+    /** The scores of a query on a shard snapshot, kept until the passages are appended. */
+    static final class Result {
+
+        final Snapshot snapshot;
+
+        final Scores scores;
+
+        /** The indexes of the documents with hits (all in dense mode), ascending. */
+        final int[] hitDocs;
+
+        /** The top scores of this shard only. */
+        final TopScores topScores;
+
+
+        Result(Snapshot snapshot, Scores scores, int[] hitDocs, TopScores topScores) {
+            this.snapshot  = snapshot;
+            this.scores    = scores;
+            this.hitDocs   = hitDocs;
+            this.topScores = topScores;
+        }
+
+    }
+
+
+    /** The number of documents scored before the pruning bound is checked again. */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Covers the rounding of the smoothing and the approximation of {@link Smoothing#EXPONENTIAL} (at most 3% above the
+     * kernel), so that a pruned document really has no position above the threshold.
+     */
+    private static final float BOUND_MARGIN = 1.05f;
+
+
+    /** {@code null} without inverted index. */
+    final InvertedIndex invertedIndex;
+
+    private final Recycler<Scores> scoresRecycler = new Recycler<>(Scores::new, null);
+
+
+    Shard(boolean withInvertedIndex) {
+        invertedIndex = withInvertedIndex ? new InvertedIndex() : null;
+    }
+
+
+    /**
+     * Scores the query terms in the snapshot, smooths the scores and selects the {@code limit} top scores of this shard.
+     * The result must be passed to {@link #recycle(Result)} once its passages were appended.
+     * <p>
+     * MaxScore pruning: the documents containing query terms are visited by descending upper bound of their maximal
+     * score (see {@link SimpleDoc#impact(int)}). Once a bound can not beat the lowest selected score, the remaining
+     * documents are never scored, so frequent terms cost next to nothing when a rare term decides the selection. The
+     * pruned documents have no positions above the threshold, so the results are the same.
+     *
+     * @param tokenIds the dictionary ids of the query terms
+     * @param weights the score of each query term
+     * @param parallel spread the documents over the common pool, only worth it if the shard is the only one
+     */
+    Result score(Snapshot snapshot, int[] tokenIds, float[] weights, int limit, boolean sparse, Smoothing smoothing, boolean parallel) {
+        Scores scores = sparse ? scoresRecycler.get().resetSparse(snapshot.docs) : scoresRecycler.get().reset(snapshot.docs);
+
+        InvertedIndex.Matches matches = invertedIndex != null ? invertedIndex.bound(tokenIds, weights, snapshot.ordinals, snapshot.docs, scores) : null;
+
+        if (matches == null) bound(snapshot.docs, tokenIds, weights, scores, parallel);
+
+        TopScores topScores = new TopScores().reset(limit);
+
+        // the documents are scored in batches of similar bounds, so that the floor rises between them
+        int[] candidates = scores.candidates();
+        for (int from = 0, to; from < candidates.length; from = to) {
+            float floor = topScores.floor();
+
+            for (to = from; to < candidates.length && to - from < BATCH_SIZE && BOUND_MARGIN * scores.bound(candidates[to]) > floor; to++);
+            if (to == from) break;
+
+            int[] batch = Arrays.copyOfRange(candidates, from, to);
+
+            IntStream docs = Arrays.stream(batch);
+            (parallel ? docs.parallel() : docs).forEach(i -> {
+                if (matches != null) {
+                    invertedIndex.score(matches, i, scores); // the positions of the postings, no lookup per term
+                } else {
+                    for (int t = 0; t < tokenIds.length; t++) scores.add(i, snapshot.docs[i], tokenIds[t], weights[t]);
+                }
+            });
+
+            scores.smooth(snapshot.docs, batch, smoothing, parallel);
+
+            // best documents first: once a document can not beat the lowest selected score, no later one can
+            for (int i : byMaxScore(scores, batch)) {
+                if (scores.maxScore(i) <= topScores.floor()) break;
+                scores.update(i, snapshot.docs[i], topScores);
+            }
+        }
+
+        return new Result(snapshot, scores, scores.docs(), topScores);
+    }
+
+
+    void recycle(Result result) {
+        scoresRecycler.recycle(result.scores);
+    }
+
+
+    /**
+     * Without inverted index: sums the bounds of all documents from the last position of each query term. This touches
+     * every document, so it is spread like the scoring.
+     */
+    private static void bound(SimpleDoc[] docs, int[] tokenIds, float[] weights, Scores scores, boolean parallel) {
+        IntStream indexes = IntStream.range(0, docs.length);
+        (parallel ? indexes.parallel() : indexes).forEach(i -> {
+            float bound = 0;
+            for (int t = 0; t < tokenIds.length; t++) {
+                if (docs[i].lastPos(tokenIds[t]) != SimpleDoc.NOT_FOUND) bound += weights[t] * docs[i].impact(tokenIds[t]);
+            }
+            scores.setBound(i, bound);
+        });
+
+        scores.collectBounds();
+    }
+
+
+    /** Returns the document indexes ordered by descending maximal score. */
+    private static int[] byMaxScore(Scores scores, int[] docs) {
+        long[] sorted = new long[docs.length];
+        for (int i = 0; i < docs.length; i++) sorted[i] = (long) Float.floatToIntBits(scores.maxScore(docs[i])) << 32 | docs[i];
+
+        Arrays.sort(sorted); // scores are not negative, so their bits are ordered like their values
+
+        int[] ordered = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) ordered[i] = (int) sorted[docs.length - 1 - i];
+        return ordered;
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotsearch.hppc.FloatArrayList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a {@link Corpus} to a {@link Coordinator}, so that a knowledge base too large for one node can be split by its
+ * roots over several nodes. Two binary HTTP endpoints, the bodies are written by {@link DataOutput}:
+ * <ul>
+ *   <li>{@code POST /scores}: query, see {@link #writeQuery(String, DataOutput)}, limit (int). Returns the histogram of the top scores of the corpus, see
+ *   {@link #writeHistogram(float[], DataOutput)}.</li>
+ *   <li>{@code POST /passages}: query, limit (int), threshold (float), ties (int). Returns the passages as UTF-8
+ *   text, see {@link Corpus#getPassages(String, int, float, int)}.</li>
+ * </ul>
+ * The limits of the requests are clamped to {@link #MAX_LIMIT}. Binds to the loopback interface unless a host is
+ * given, the endpoints are not authenticated.
+ * <p>
+ * <b>Thread Safety:</b> Requests are handled concurrently, each on a virtual thread, like concurrent queries.
+ */
+final class ShardServer implements AutoCloseable {
+
+    static final String SCORES = "/scores";
+
+    static final String PASSAGES = "/passages";
+
+    /** The maximal number of positions a request may select, far more than fit into the context of an LLM. */
+    static final int MAX_LIMIT = 1 << 20;
+
+    /** The maximal length of a query in UTF-8 bytes. */
+    static final int MAX_QUERY_BYTES = 1 << 20;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardServer.class);
+
+    /** Reads a request and writes the response of an endpoint. */
+    private interface Handler {
+
+        void handle(DataInput in, DataOutput out) throws IOException;
+
+    }
+
+
+    private final HttpServer httpServer;
+
+    private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+
+
+    /**
+     * Binds the corpus to the port, {@code 0} picks a free one. Serves it once {@link #start() started}.
+     *
+     * @param host the host name or address to bind to, {@code null} for the loopback interface
+     */
+    ShardServer(Corpus corpus, String host, int port) {
+        try {
+            InetAddress address = host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+            httpServer = HttpServer.create(new InetSocketAddress(address, port), 0);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        httpServer.createContext(SCORES, exchange -> handle(exchange, (in, out) ->
+                writeHistogram(corpus.getTopScores(readQuery(in), readLimit(in)).scores(), out)));
+
+        httpServer.createContext(PASSAGES, exchange -> handle(exchange, (in, out) ->
+                out.write(corpus.getPassages(readQuery(in), readLimit(in), in.readFloat(), readLimit(in)).getBytes(StandardCharsets.UTF_8))));
+
+        httpServer.setExecutor(executorService);
+    }
+
+
+    ShardServer start() {
+        httpServer.start();
+
+        LOGGER.info("Serving shard on {}", httpServer.getAddress());
+
+        return this;
+    }
+
+
+    int port() {
+        return httpServer.getAddress().getPort();
+    }
+
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executorService.close();
+    }
+
+
+    /**
+     * Writes the query as its length (int) and its UTF-8 bytes, unlike {@link DataOutput#writeUTF(String)} not limited to
+     * 64 KB.
+     *
+     * @throws IllegalArgumentException if the query is longer than {@link #MAX_QUERY_BYTES}
+     */
+    static void writeQuery(String query, DataOutput out) throws IOException {
+        byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_QUERY_BYTES) throw new IllegalArgumentException("Query too long: " + bytes.length + " bytes, at most " + MAX_QUERY_BYTES + " allowed");
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    /** Reads a query written by {@link #writeQuery(String, DataOutput)}. */
+    static String readQuery(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_QUERY_BYTES) throw new IOException("Invalid query length " + length);
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Writes the scores as histogram: the number of distinct scores (int), then each score (float) with its count (int).
+     *
+     * @param scores descending, see {@link TopScores#scores()}
+     */
+    static void writeHistogram(float[] scores, DataOutput out) throws IOException {
+        int distinct = 0;
+        for (int i = 0; i < scores.length; i++) if (i == 0 || scores[i] != scores[i - 1]) distinct++;
+
+        out.writeInt(distinct);
+
+        for (int i = 0, count; i < scores.length; i += count) {
+            count = 1;
+            while (i + count < scores.length && scores[i + count] == scores[i]) count++;
+
+            out.writeFloat(scores[i]);
+            out.writeInt(count);
+        }
+    }
+
+
+    /**
+     * Reads a histogram written by {@link #writeHistogram(float[], DataOutput)}, returns the scores descending.
+     *
+     * @param limit the limit of the request, a histogram with more scores is invalid
+     */
+    static float[] readHistogram(DataInput in, int limit) throws IOException {
+        int distinct = in.readInt();
+        if (distinct < 0 || distinct > limit) throw new IOException("Invalid number of distinct scores " + distinct + " for limit " + limit);
+
+        FloatArrayList scores = new FloatArrayList();
+        for (int i = 0; i < distinct; i++) {
+            float score = in.readFloat();
+            int count = in.readInt();
+            if (count <= 0 || count > limit - scores.size()) throw new IOException("Invalid count " + count + " of score " + score + " for limit " + limit);
+
+            for (; count > 0; count--) scores.add(score);
+        }
+
+        return scores.toArray();
+    }
+
+
+    /** Reads a limit of a request, clamped to {@code [0, MAX_LIMIT]}. */
+    private static int readLimit(DataInput in) throws IOException {
+        return Math.clamp(in.readInt(), 0, MAX_LIMIT);
+    }
+
+
+    private static void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            if (! "POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+            try {
+                handler.handle(new DataInputStream(exchange.getRequestBody()), new DataOutputStream(response));
+
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Shard request {} failed", exchange.getRequestURI(), e);
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, response.size());
+            response.writeTo(exchange.getResponseBody());
+        }
+    }
+
+}
@@ -1,50 +1,194 @@
 package com.qaware.mcp.tools.knowledge;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UncheckedIOException;
-import java.util.Arrays;
 
 import com.carrotsearch.hppc.IntArrayList;
-import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntFloatHashMap;
+import com.carrotsearch.hppc.procedures.IntIntProcedure;
 import com.qaware.mcp.tools.knowledge.nlp.Tokens;
 
+/**
+ * The token data of a single document: token ids, their source offsets and per token occurrence chains, see
+ * {@link TokenData}.
+ * <p>
+ * Instances are immutable after construction and can be scored by many queries concurrently. The scores of a query
+ * live in a {@code float[]} per document (one entry per position, see {@link #size()}) owned by the query.
+ */
 class SimpleDoc {
 
-    private static final int NOT_FOUND = -1;
+    static final int NOT_FOUND = -1;
 
-    private final IntIntHashMap lastPos = new IntIntHashMap();
-    private final IntArrayList previous = new IntArrayList();
+    /** Maximal distance of two hits to influence each other in {@link #smooth(float[])}. */
+    static final int MAX_DIST = 200;
+
+    /** Linear decay of a smoothed score per position. */
+    static final float SLOPE = 0.1f;
+
+    /** The weights of the kernel: {@code 1 / (1 + distance)}. */
+    private static final float[] INVERSE = new float[MAX_DIST + 1];
+
+    /**
+     * True if smoothing uses {@link VectorSmoothing}: the JVM was started with {@code --add-modules jdk.incubator.vector}
+     * and the hardware has SIMD registers. Selected once at startup.
+     */
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() && VectorSmoothing.isAccelerated();
+
+    /**
+     * {@code PACKED[n]}: the largest sum of the kernel weights of {@code n} distinct positions around a position, i.e. of
+     * the densest arrangement at the distances 0, 1, 1, 2, 2, ... Up to {@code 4 * MAX_DIST + 1} positions, see
+     * {@link #impact(int)}.
+     */
+    private static final float[] PACKED = new float[4 * MAX_DIST + 2];
+
+    static {
+        for (int dist = 0; dist <= MAX_DIST; dist++) INVERSE[dist] = 1f / (1 + dist);
+
+        for (int n = 1; n < PACKED.length; n++) PACKED[n] = PACKED[n - 1] + 1f / (1 + n / 2);
+    }
 
     private final Dictionary dictionary;
 
+    private final int id;
+
     private final long lastMod;
 
     private final CharSequence source;
-    private final IntArrayList beginEnd = new IntArrayList();
-    private final IntArrayList tokenIds = new IntArrayList();
 
-    float[] scores;
+    private final TokenData tokenData;
+
+    private final int size;
+
+    /** Rejects most tokens not in the document before {@link TokenData#lastPos(int)} is asked. */
+    private final TokenFilter tokenFilter;
+
+    /** The {@link #impact(int)} of the tokens above 1. */
+    private final IntFloatHashMap impacts;
+
+    public SimpleDoc(int aId, long aLastMod, Dictionary aDictionary, Tokens tokens) {
+        this(aId, aLastMod, aDictionary, tokens, (TokenStore) null);
+    }
+
+
+    /** @param tokenStore moves the token data and the source off the heap, {@code null} keeps them on the heap */
+    SimpleDoc(int aId, long aLastMod, Dictionary aDictionary, Tokens tokens, TokenStore tokenStore) {
+        HeapTokenData heapTokenData = tokenize(aDictionary, tokens);
 
-    public SimpleDoc(long aLastMod, Dictionary aDictionary, Tokens tokens) {
-        lastMod    = aLastMod;
-        dictionary = aDictionary;
-        source     = tokens.source();
+        id          = aId;
+        lastMod     = aLastMod;
+        dictionary  = aDictionary;
+        source      = tokenStore == null ? tokens.source() : tokenStore.store(tokens.source());
+        tokenData   = tokenStore == null ? heapTokenData : tokenStore.store(heapTokenData);
+        size        = tokenData.size();
+        tokenFilter = new TokenFilter(tokenData);
+        impacts     = impacts();
+    }
+
+
+    /**
+     * Tokenizes the text streamed by the reader window by window, see {@link Tokens#reset(Reader, Appendable)}. With a
+     * token store, the source is encoded into a file while reading, so the text is never held on the heap. Without, it
+     * ends up in a {@link String}, which needs one byte per char for Latin-1 texts.
+     *
+     * @param tokens the tokens to reset with the reader
+     * @param tokenStore moves the token data and the source off the heap, {@code null} keeps them on the heap
+     */
+    SimpleDoc(int aId, long aLastMod, Dictionary aDictionary, Tokens tokens, Reader reader, TokenStore tokenStore) {
+        StringBuilder heapSource = tokenStore == null ? new StringBuilder() : null;
+        Utf8Source.Builder mappedSource = tokenStore == null ? null : tokenStore.newSource();
+
+        HeapTokenData heapTokenData;
+        try {
+            heapTokenData = tokenize(aDictionary, tokens.reset(reader, heapSource != null ? heapSource : mappedSource));
+        } catch (RuntimeException e) {
+            if (mappedSource != null) mappedSource.discard();
+            throw e;
+        }
 
-        int pos = 0;
-        while (tokens.next()) {
-            int tokenId = dictionary.add(tokens.buffer(), 0, tokens.length());
+        id          = aId;
+        lastMod     = aLastMod;
+        dictionary  = aDictionary;
+        source      = heapSource != null ? heapSource.toString() : mappedSource.build();
+        tokenData   = tokenStore == null ? heapTokenData : tokenStore.store(heapTokenData);
+        size        = tokenData.size();
+        tokenFilter = new TokenFilter(tokenData);
+        impacts     = impacts();
+    }
 
-            tokenIds.add(tokenId);
 
-            previous.add(lastPos.getOrDefault(tokenId, NOT_FOUND));
-            lastPos.put(tokenId, pos);
+    private SimpleDoc(int aId, long aLastMod, Dictionary aDictionary, CharSequence aSource, TokenData aTokenData) {
+        id          = aId;
+        lastMod     = aLastMod;
+        dictionary  = aDictionary;
+        source      = aSource;
+        tokenData   = aTokenData;
+        size        = tokenData.size();
+        tokenFilter = new TokenFilter(tokenData);
+        impacts     = impacts();
+    }
 
-            beginEnd.add(tokens.begin(), tokens.end());
 
-            pos++;
+    /** Writes the token data and the source of the document, see {@link #read(DataInput, int, Dictionary, TokenStore)}. */
+    void write(DataOutput out) throws IOException {
+        int[] tokenIds = new int[size];
+        int[] previous = new int[size];
+        int[] beginEnd = new int[size * 2];
+
+        for (int pos = 0; pos < size; pos++) {
+            tokenIds[pos]         = tokenData.tokenId(pos);
+            previous[pos]         = tokenData.previous(pos);
+            beginEnd[pos * 2]     = tokenData.begin(pos);
+            beginEnd[pos * 2 + 1] = tokenData.end(pos);
         }
 
-        scores = new float[pos];
+        out.writeLong(lastMod);
+
+        IndexFile.writeInts(out, tokenIds, size);
+        IndexFile.writeInts(out, previous, size);
+        IndexFile.writeInts(out, beginEnd, size * 2);
+        IndexFile.writeChars(out, source);
+    }
+
+
+    /** Reads a document written by {@link #write(DataOutput)}. The token ids refer to the given dictionary. */
+    static SimpleDoc read(DataInput in, int id, Dictionary dictionary, TokenStore tokenStore) throws IOException {
+        long lastMod = in.readLong();
+
+        TokenData tokenData = new HeapTokenData(IndexFile.readInts(in), IndexFile.readInts(in), IndexFile.readInts(in));
+        CharSequence source = IndexFile.readChars(in);
+
+        if (tokenStore == null) return new SimpleDoc(id, lastMod, dictionary, source, tokenData);
+
+        return new SimpleDoc(id, lastMod, dictionary, tokenStore.store(source), tokenStore.store(tokenData));
+    }
+
+
+    /**
+     * Returns this document with its token ids replaced by {@code newIds[tokenId]}, referring to the compacted
+     * dictionary. Keeps the id and the source.
+     */
+    SimpleDoc remap(Dictionary aDictionary, int[] newIds, TokenStore tokenStore) {
+        HeapTokenData heapTokenData = HeapTokenData.remap(tokenData, newIds);
+
+        return new SimpleDoc(id, lastMod, aDictionary, source, tokenStore == null ? heapTokenData : tokenStore.store(heapTokenData));
+    }
+
+
+    private static HeapTokenData tokenize(Dictionary dictionary, Tokens tokens) {
+        HeapTokenData heapTokenData = new HeapTokenData();
+
+        while (tokens.next()) heapTokenData.add(dictionary.add(tokens.buffer(), 0, tokens.length()), tokens.begin(), tokens.end());
+
+        return heapTokenData;
+    }
+
+
+    /** Returns the number of token positions. */
+    int size() {
+        return size;
     }
 
 
@@ -58,9 +202,15 @@ class SimpleDoc {
     }
 
 
+    /** Returns the id of the document, unique within its corpus. */
+    int id() {
+        return id;
+    }
+
+
     @Override
     public String toString() {
-        return print(new StringBuilder()).toString();
+        return print(new StringBuilder(), new float[size]).toString();
     }
 
 
@@ -69,11 +219,11 @@ class SimpleDoc {
     }
 
 
-    Appendable print(Appendable out) {
+    Appendable print(Appendable out, float[] scores) {
         try {
             int lastBegin = NOT_FOUND;
 
-            for (int i = 0; i < scores.length; i++) {
+            for (int i = 0; i < size; i++) {
                 int begin = getBegin(i);
                 if (begin != lastBegin) {
                     lastBegin = begin;
@@ -92,57 +242,143 @@ class SimpleDoc {
 
 
     private int getToken(int i) {
-        return tokenIds.get(i);
+        return tokenData.tokenId(i);
     }
 
 
-    void resetScores() {
-        Arrays.fill(scores, 0);
+    void addScore(float[] scores, int tokenId, float score) {
+        for (int pos = lastPos(tokenId); pos != NOT_FOUND; pos = previousPos(pos)) addPositionScore(scores, firstPos(pos), score);
     }
 
 
-    void addScore(int tokenId, float score) {
-        for (int pos = lastPos.getOrDefault(tokenId, NOT_FOUND); pos != NOT_FOUND; pos = previous.get(pos)) {
+    /** Adds {@code score} at a single position. */
+    static void addPositionScore(float[] scores, int pos, float score) {
+        scores[pos] = saturatingAdd(scores[pos], score);
+    }
 
-            int firstPos = pos;
-            while (firstPos > 0 && getBegin(firstPos - 1) == getBegin(firstPos)) firstPos--;
 
-            scores[firstPos] = (float) Math.sqrt(scores[firstPos] * scores[firstPos] + score * score); // saturating addition
-        }
+    static float saturatingAdd(float a, float b) {
+        return (float) Math.sqrt(a * a + b * b);
+    }
+
+
+    /** Calls the procedure with each distinct token id and its last position. */
+    void forEachToken(IntIntProcedure procedure) {
+        tokenData.forEachToken(procedure);
+    }
+
+
+    /**
+     * Returns an upper bound of the kernel weights {@code 1 / (1 + distance)} summed over the occurrences of the token
+     * around any position, so the smoothed score of a query term can not exceed its query score times the impact. 1 for
+     * a token without other occurrences nearby. Only defined for tokens of the document.
+     */
+    float impact(int tokenId) {
+        return impacts.getOrDefault(tokenId, 1f);
     }
 
 
-    void update(FloatHistogram floatHistogram) {
+    /**
+     * Computes the impacts at index time. The sum of the weights of the occurrences up to {@link #MAX_DIST} away from a
+     * position between two occurrences is convex, so it is at most the sum at one of them over the occurrences up to
+     * {@code 2 * MAX_DIST} away. That one is bounded by the {@link #PACKED} weights of the densest occurrences in a span
+     * of {@code 4 * MAX_DIST}, times the number of occurrences sharing a position (alternatives of a word). O(size).
+     */
+    private IntFloatHashMap impacts() {
+        IntFloatHashMap tokenImpacts = new IntFloatHashMap();
+        IntArrayList positions = new IntArrayList();
+
+        forEachToken((tokenId, lastPos) -> {
+            positions.clear();
+
+            int multiplicity = 1;
+            int run = 0;
+            for (int pos = lastPos; pos != NOT_FOUND; pos = previousPos(pos)) { // descending
+                int firstPos = firstPos(pos);
+
+                if (! positions.isEmpty() && positions.get(positions.size() - 1) == firstPos) {
+                    run++;
+                } else {
+                    positions.add(firstPos);
+                    run = 1;
+                }
+
+                multiplicity = Math.max(multiplicity, run);
+            }
+
+            int densest = 0;
+            for (int i = 0, j = 0; i < positions.size(); i++) {
+                while (positions.get(j) - positions.get(i) > 4 * MAX_DIST) j++;
+                densest = Math.max(densest, i - j + 1);
+            }
+
+            float impact = multiplicity * PACKED[densest];
+            if (impact > 1) tokenImpacts.put(tokenId, impact);
+        });
+
+        return tokenImpacts;
+    }
+
+
+    /** Returns the last position of the token or {@link #NOT_FOUND}. */
+    int lastPos(int tokenId) {
+        return tokenFilter.mayContain(tokenId) ? tokenData.lastPos(tokenId) : NOT_FOUND;
+    }
+
+
+    /** Returns the previous position of the token at {@code pos} or {@link #NOT_FOUND}. */
+    int previousPos(int pos) {
+        return tokenData.previous(pos);
+    }
+
+
+    /** Returns the first position sharing the source offsets of {@code pos} (alternatives like stems share them). */
+    int firstPos(int pos) {
+        while (pos > 0 && getBegin(pos - 1) == getBegin(pos)) pos--;
+        return pos;
+    }
+
+
+    void update(float[] scores, TopScores topScores) {
         int lastBegin = NOT_FOUND;
 
-        for (int i = 0; i < scores.length; i++) {
+        for (int i = 0; i < size; i++) {
             int begin = getBegin(i);
-            if (begin != lastBegin && scores[i] > 0) floatHistogram.increment(scores[i]);
+            if (begin != lastBegin && scores[i] > 0) topScores.add(scores[i]);
             lastBegin = begin;
         }
     }
 
 
+    /** Like {@link #update(float[], TopScores)}, but only visits the positions with a score. */
+    void update(SparseScores scores, TopScores topScores) {
+        for (int i = 0; i < scores.size(); i++) {
+            int pos = scores.position(i);
+            if (! isAlternative(pos)) topScores.add(scores.value(i));
+        }
+    }
+
+
     int getBegin(int i) {
-        return beginEnd.get(i * 2);
+        return tokenData.begin(i);
     }
 
 
     int getEnd(int i) {
-        return beginEnd.get(i * 2 + 1);
+        return tokenData.end(i);
     }
 
 
-    Appendable append(Appendable appendable, float threshold, String file) {
+    Appendable append(Appendable appendable, float[] scores, TopScores topScores, String file) {
         int lastBegin  = NOT_FOUND;
         int blockBegin = NOT_FOUND;
 
-        for (int i = 0; i < scores.length; i++) {
+        for (int i = 0; i < size; i++) {
             int begin = getBegin(i);
             if (begin == lastBegin) continue;
             lastBegin = begin;
 
-            if (scores[i] >= threshold) {
+            if (topScores.select(scores[i])) {
                 if (blockBegin == NOT_FOUND) blockBegin = begin;
             } else {
                 file = append(appendable, blockBegin, i, file);
@@ -150,19 +386,55 @@ class SimpleDoc {
             }
         }
 
-        append(appendable, blockBegin, scores.length, file);
+        append(appendable, blockBegin, size, file);
+
+        return appendable;
+    }
+
+
+    /** Like {@link #append(Appendable, float[], TopScores, String)}, but only visits the positions with a score. */
+    Appendable append(Appendable appendable, SparseScores scores, TopScores topScores, String file) {
+        int blockBegin = NOT_FOUND;
+        int next       = NOT_FOUND; // the position following the current block
+
+        for (int i = 0; i < scores.size(); i++) {
+            int pos = scores.position(i);
+            if (isAlternative(pos) || ! topScores.select(scores.value(i))) continue;
+
+            if (pos != next) {
+                file = append(appendable, blockBegin, next, file);
+                blockBegin = getBegin(pos);
+            }
+
+            next = pos + 1;
+            while (next < size && isAlternative(next)) next++;
+        }
+
+        append(appendable, blockBegin, next, file);
 
         return appendable;
     }
 
 
+    /** Returns true if the position shares its source offsets with the previous one (like a stem of the same word). */
+    private boolean isAlternative(int pos) {
+        return pos > 0 && getBegin(pos - 1) == getBegin(pos);
+    }
+
+
     String append(Appendable appendable, int blockBegin, int endPos, String file) {
         if (blockBegin == NOT_FOUND) return file;
 
+        return appendPassage(appendable, source.subSequence(blockBegin, getEnd(endPos - 1)), file);
+    }
+
+
+    /** Appends a passage, preceded by the file header unless {@code file} is {@code null}. Returns {@code null}. */
+    static String appendPassage(Appendable appendable, CharSequence passage, String file) {
         try {
             if (file != null) appendable.append("\n🟡 FILE/SOURCE: ").append(file).append("\n");
 
-            appendable.append(source.subSequence(blockBegin, getEnd(endPos - 1))).append("\n➖➖\n");
+            appendable.append(passage).append("\n➖➖\n");
 
             return null;
 
@@ -172,64 +444,79 @@ class SimpleDoc {
     }
 
 
-    public void smooth() {
-        smooth(scores);
+    /** Smooths the scores in place with the {@link Smoothing#KERNEL}, see {@link #smooth(float[], Smoothing)}. */
+    static float smooth(float[] scores) {
+        return smooth(scores, Smoothing.KERNEL);
     }
 
 
-    static void smooth(float[] scores) {
+    /** Smooths the scores in place and returns the maximal smoothed score, which is the score of a hit. */
+    static float smooth(float[] scores, Smoothing smoothing) {
+        return VECTORIZED ? VectorSmoothing.smooth(scores, smoothing) : smoothScalar(scores, smoothing);
+    }
+
+
+    /** {@link #smooth(float[], Smoothing)} without the Vector API. */
+    static float smoothScalar(float[] scores, Smoothing smoothing) {
         IntArrayList scorePos = new IntArrayList();
 
         for (int i = 0; i < scores.length; i++) if (scores[i] > 0) scorePos.add(i);
 
-        if (scorePos.isEmpty()) return;
+        if (scorePos.isEmpty()) return 0;
 
-        float[] scoresCopy = scores.clone(); // geht kompakter!!!
+        int[] hits = scorePos.toArray();
 
-        final int MAX_DIST = 200;
-        for (int i = 0; i < scorePos.size(); i++) {
+        float[] hitScores = new float[hits.length];
+        for (int i = 0; i < hits.length; i++) hitScores[i] = scores[hits[i]];
 
-            int pos = scorePos.get(i);
+        float[] smoothed = new float[hits.length];
+        smoothing.spread(hits, hitScores, hits.length, smoothed, false);
 
-            double score = 0;
+        float max = 0;
+        for (int i = 0; i < hits.length; i++) max = Math.max(max, scores[hits[i]] = smoothed[i]);
 
-            for (int j = i; j >= 0; j--) {
-                int pos2 = scorePos.get(j);
-                int dist = pos - pos2;
-                if (dist > MAX_DIST) break;
+        int r = 0;
+        for (int i = -1; i < hits.length; i++) {
+            int l  = r;
+            r = i == hits.length - 1 ? scores.length - 1 : hits[i + 1];
 
-                score += scoresCopy[pos2] / (1 + dist);
-            }
+            float ll = scores[l];
+            float rr = scores[r];
 
-            for (int j = i + 1; j < scorePos.size(); j++) {
-                int pos2 = scorePos.get(j);
-                int dist = pos2 - pos;
-                if (dist > MAX_DIST) break;
+            for (int j = l; j <= r; j++) scores[j] = decay(ll, rr, l, r, j);
+        }
 
-                score += scoresCopy[pos2] / (1 + dist);
-            }
+        return max;
+    }
 
-            scores[pos] = (float) score;
-        }
 
-        float slope = 0.1f;
+    /** Sums the scores of the hits around hit {@code i}, weighted by 1 / (1 + distance), see {@link Smoothing#KERNEL}. */
+    static float kernelScalar(int[] hits, float[] hitScores, int count, int i) {
+        int pos = hits[i];
 
-        int r = 0;
-        for (int i = -1; i < scorePos.size(); i++) {
-            int l  = r;
-            r = i == scorePos.size() - 1 ? scores.length - 1 : scorePos.get(i + 1);
+        double score = 0;
 
-            float ll = scores[l];
-            float rr = scores[r] - slope * (r - l);
+        for (int j = i; j >= 0; j--) {
+            int dist = pos - hits[j];
+            if (dist > MAX_DIST) break;
 
-            for (int j = l; j <= r; j++) {
-                scores[j] = Math.max(Math.max(ll, rr), 0);
-                ll -= slope;
-                rr += slope;
-            }
+            score += hitScores[j] * INVERSE[dist];
+        }
+
+        for (int j = i + 1; j < count; j++) {
+            int dist = hits[j] - pos;
+            if (dist > MAX_DIST) break;
 
+            score += hitScores[j] * INVERSE[dist];
         }
+
+        return (float) score;
     }
 
-}
 
+    /** The score at {@code j} between the positions {@code l} and {@code r}: both scores decay linearly with the distance. */
+    static float decay(float ll, float rr, int l, int r, int j) {
+        return Math.max(Math.max(ll - SLOPE * (j - l), rr - SLOPE * (r - j)), 0);
+    }
+
+}
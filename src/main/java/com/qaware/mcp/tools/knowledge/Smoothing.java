@@ -0,0 +1,107 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+
+/**
+ * How {@link SimpleDoc#smooth(float[], Smoothing)} and {@link SparseScores#smooth(int, Smoothing)} spread the score of
+ * each hit to the hits around it. The gaps between the hits are then filled by the same linear decay in both modes.
+ */
+enum Smoothing {
+
+    /**
+     * Exact: sums the hits up to {@link SimpleDoc#MAX_DIST} positions away, weighted by {@code 1 / (1 + distance)}. Costs
+     * O(hits × hits within {@link SimpleDoc#MAX_DIST}), i.e. quadratic for clustered hits.
+     */
+    KERNEL {
+        @Override
+        void spread(int[] hits, float[] hitScores, int count, float[] smoothed, boolean vectorized) {
+            for (int i = 0; i < count; i++) {
+                smoothed[i] = vectorized ? VectorSmoothing.kernel(hits, hitScores, count, i) : SimpleDoc.kernelScalar(hits, hitScores, count, i);
+            }
+        }
+    },
+
+    /**
+     * Approximates the weights of the {@link #KERNEL} by a sum of four exponential decays (at most 3% off), each computed
+     * by a recursive forward and backward pass over the hits with a sliding window: a hit leaving the window is subtracted
+     * again, so exactly the hits of the kernel are summed. O(hits).
+     */
+    EXPONENTIAL {
+        @Override
+        void spread(int[] hits, float[] hitScores, int count, float[] smoothed, boolean vectorized) {
+            double[] state = new double[WEIGHTS.length];
+
+            int tail = 0;
+            for (int i = 0; i < count; i++) { // forward: the hit and the hits before it
+                tail = slide(state, hits, hitScores, i, i == 0 ? Integer.MAX_VALUE : hits[i] - hits[i - 1], tail, 1);
+                smoothed[i] = (float) sum(state);
+            }
+
+            Arrays.fill(state, 0);
+
+            tail = count - 1;
+            for (int i = count - 1; i >= 0; i--) { // backward: the hit and the hits after it, the hit itself was already counted
+                tail = slide(state, hits, hitScores, i, i == count - 1 ? Integer.MAX_VALUE : hits[i + 1] - hits[i], tail, -1);
+                smoothed[i] += (float) (sum(state) - hitScores[i]);
+            }
+        }
+    };
+
+
+    /** {@code 1 / (1 + distance) ≈ Σ WEIGHTS[k] * RATIOS[k]^distance}: least squares fit of the relative error, normalized to 1 at distance 0. */
+    private static final double[] WEIGHTS = { 0.6126354153631035, 0.29220037513526365, 0.07363761402332991, 0.016882907194455076 };
+
+    private static final double[] RATIOS = { 0.31155500074698494, 0.7933386907175497, 0.9549066236747701, 0.9938041502903352 };
+
+    /** {@code POWERS[k][distance] = RATIOS[k]^distance} up to twice {@link SimpleDoc#MAX_DIST}, the largest distance of a hit leaving the window. */
+    private static final double[][] POWERS = new double[WEIGHTS.length][2 * SimpleDoc.MAX_DIST + 1];
+
+    static {
+        double sum = Arrays.stream(WEIGHTS).sum();
+
+        for (int k = 0; k < WEIGHTS.length; k++) {
+            WEIGHTS[k] /= sum;
+            for (int dist = 0; dist < POWERS[k].length; dist++) POWERS[k][dist] = Math.pow(RATIOS[k], dist);
+        }
+    }
+
+
+    /**
+     * Computes the smoothed scores of the hits (sorted by position) before the gaps are filled.
+     *
+     * @param vectorized use {@link VectorSmoothing} where applicable, only allowed if {@link SimpleDoc#VECTORIZED}
+     */
+    abstract void spread(int[] hits, float[] hitScores, int count, float[] smoothed, boolean vectorized);
+
+
+    /**
+     * Moves the window to hit {@code i}: decays the exponentials over the gap to the previous hit, adds the hit and
+     * removes the hits now more than {@link SimpleDoc#MAX_DIST} away, starting at {@code tail}.
+     *
+     * @param direction 1 for the forward pass, -1 for the backward pass
+     * @return the new tail: the farthest hit still in the window
+     */
+    private static int slide(double[] state, int[] hits, float[] hitScores, int i, int gap, int tail, int direction) {
+        if (gap > SimpleDoc.MAX_DIST) { // all hits left the window
+            Arrays.fill(state, 0);
+            tail = i;
+            gap  = 0;
+        }
+
+        for (int k = 0; k < state.length; k++) state[k] = state[k] * POWERS[k][gap] + hitScores[i];
+
+        for (int dist; (dist = (hits[i] - hits[tail]) * direction) > SimpleDoc.MAX_DIST; tail += direction) {
+            for (int k = 0; k < state.length; k++) state[k] -= hitScores[tail] * POWERS[k][dist];
+        }
+
+        return tail;
+    }
+
+
+    private static double sum(double[] state) {
+        double sum = 0;
+        for (int k = 0; k < state.length; k++) sum += WEIGHTS[k] * state[k];
+        return sum;
+    }
+
+}
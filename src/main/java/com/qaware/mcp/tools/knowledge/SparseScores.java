@@ -0,0 +1,170 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * The scores of one document for one query, holding only the positions around the hits of the query tokens. Scoring,
+ * smoothing and thresholding then scale with the number of hits instead of the document size.
+ * <p>
+ * Usage: {@link #add(int, float)} the hits, {@link #smooth(int, Smoothing)} once, then read the positions with a positive
+ * score in ascending order via {@link #position(int)} and {@link #value(int)}. The result is identical to
+ * {@link SimpleDoc#smooth(float[], Smoothing)} on a dense array: zero at all positions not listed.
+ * <p>
+ * Not thread-safe: each query uses its own instances. Instances are meant to be recycled via {@link #clear()}.
+ */
+final class SparseScores {
+
+    private final IntIntHashMap slots = new IntIntHashMap();
+
+    private int[] hits = new int[16];
+
+    private float[] hitScores = new float[16];
+
+    private float[] smoothed = new float[16];
+
+    private int hitCount;
+
+    private int[] positions = new int[64];
+
+    private float[] values = new float[64];
+
+    private int size;
+
+    private float max;
+
+
+    /** Adds {@code score} at the position using the same saturating addition as the dense scores. */
+    void add(int pos, float score) {
+        int slot = slots.getOrDefault(pos, SimpleDoc.NOT_FOUND);
+
+        if (slot == SimpleDoc.NOT_FOUND) {
+            slot = hitCount++;
+            if (slot == hits.length) grow();
+
+            slots.put(pos, slot);
+            hits[slot]      = pos;
+            hitScores[slot] = 0;
+        }
+
+        hitScores[slot] = SimpleDoc.saturatingAdd(hitScores[slot], score);
+    }
+
+
+    boolean isEmpty() {
+        return hitCount == 0;
+    }
+
+
+    /** Smooths the hits of a document with {@code docSize} positions. Only positions with a positive result are kept. */
+    void smooth(int docSize, Smoothing smoothing) {
+        size = 0;
+        max  = 0;
+        if (hitCount == 0) return;
+
+        sortHits();
+
+        smoothing.spread(hits, hitScores, hitCount, smoothed, SimpleDoc.VECTORIZED);
+        for (int i = 0; i < hitCount; i++) max = Math.max(max, smoothed[i]);
+
+        // same segments as SimpleDoc.smooth: from hit to hit, plus from the start to the first and from the last hit to the end
+        float ll = hits[0] == 0 ? smoothed[0] : 0;
+
+        int r = 0;
+        for (int i = -1; i < hitCount; i++) {
+            int l = r;
+            boolean last = i == hitCount - 1;
+
+            r = last ? docSize - 1 : hits[i + 1];
+
+            float rr = ! last ? smoothed[i + 1] : hits[i] == r ? smoothed[i] : 0;
+
+            emit(ll, rr, l, r, last ? r + 1 : r); // the position r is emitted by the next segment, which still raises it
+
+            ll = SimpleDoc.decay(ll, rr, l, r, r);
+        }
+    }
+
+
+    /** Number of positions with a positive score. */
+    int size() {
+        return size;
+    }
+
+
+    /** Returns the maximal smoothed score, which is the score of a hit. */
+    float max() {
+        return max;
+    }
+
+
+    int position(int i) {
+        return positions[i];
+    }
+
+
+    float value(int i) {
+        return values[i];
+    }
+
+
+    void clear() {
+        slots.clear();
+        hitCount = 0;
+        size     = 0;
+        max      = 0;
+    }
+
+
+    /** Emits the positive scores of {@code [l, end)}: only the parts close enough to {@code l} or {@code r} are visited. */
+    private void emit(float ll, float rr, int l, int r, int end) {
+        int prefixEnd   = (int) Math.min(end, l + (long) (ll / SimpleDoc.SLOPE) + 2);
+        int suffixBegin = (int) Math.max(l, r - (long) (rr / SimpleDoc.SLOPE) - 2);
+
+        if (suffixBegin <= prefixEnd) {
+            emit(ll, rr, l, r, l, end);
+        } else {
+            emit(ll, rr, l, r, l, prefixEnd);
+            emit(ll, rr, l, r, suffixBegin, end);
+        }
+    }
+
+
+    private void emit(float ll, float rr, int l, int r, int from, int to) {
+        for (int j = from; j < to; j++) {
+            float value = SimpleDoc.decay(ll, rr, l, r, j);
+            if (value <= 0) continue;
+
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                values    = Arrays.copyOf(values, size * 2);
+            }
+
+            positions[size] = j;
+            values[size++]  = value;
+        }
+    }
+
+
+    /** Sorts the hits by position; the slots are not needed anymore after that. */
+    private void sortHits() {
+        long[] sorted = new long[hitCount];
+        for (int i = 0; i < hitCount; i++) sorted[i] = (long) hits[i] << 32 | Float.floatToRawIntBits(hitScores[i]) & 0xFFFFFFFFL;
+
+        Arrays.sort(sorted);
+
+        for (int i = 0; i < hitCount; i++) {
+            hits[i]      = (int) (sorted[i] >>> 32);
+            hitScores[i] = Float.intBitsToFloat((int) sorted[i]);
+        }
+    }
+
+
+    private void grow() {
+        hits      = Arrays.copyOf(hits, hits.length * 2);
+        hitScores = Arrays.copyOf(hitScores, hits.length);
+        smoothed  = Arrays.copyOf(smoothed, hits.length);
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Text only counterpart of {@link Corpus} for slurping: keeps the extracted text of each location, but no tokens, so
+ * nothing can be scored. Locations are loaded and parsed (Tika) in parallel by an {@link IngestionPipeline}; like in the
+ * corpus, only new and modified locations are extracted again on later calls.
+ * <p>
+ * <b>Thread Safety:</b> Updates are serialized, the returned chunks are built from an immutable copy.
+ */
+final class TextCorpus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TextCorpus.class);
+
+    /** The extracted text of one location. Immutable. */
+    private static final class Text {
+
+        final String id;
+
+        final long version;
+
+        final String chars;
+
+
+        Text(String id, long version, String chars) {
+            this.id      = id;
+            this.version = version;
+            this.chars   = chars;
+        }
+
+    }
+
+
+    private final Scanner scanner;
+
+    private final IngestionPipeline ingestionPipeline = new IngestionPipeline();
+
+    /** Serializes the updates, see {@link Corpus}. */
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private final Map<String, Text> texts = new TreeMap<>();
+
+    private final Set<String> seen = new HashSet<>();
+
+
+    /** @param scanner reports the locations, see {@link Corpus#Corpus(Scanner)} */
+    TextCorpus(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+
+    /**
+     * Returns the text of all locations in the format of {@link Corpus#getAllChunks()}. Unlike there, the text is not cut
+     * after the last token, which would need the tokens: each passage is the full text, blank texts are left out.
+     */
+    Iterable<String> getAllChunks() {
+        Text[] current = update();
+
+        return Corpus.chunks(current.length, (stringBuilder, i) -> {
+            if (! current[i].chars.isBlank()) SimpleDoc.appendPassage(stringBuilder, current[i].chars, current[i].id);
+        });
+    }
+
+
+    /** Scans for changes and returns the texts sorted by id. */
+    private Text[] update() {
+        updateLock.lock();
+        try {
+            boolean full = scanner.scan(this::addLocation);
+            ingestionPipeline.await();
+            scanner.retry(ingestionPipeline.drainFailed());
+
+            synchronized (texts) {
+                if (full) texts.keySet().retainAll(seen);
+                seen.clear();
+
+                return texts.values().toArray(new Text[0]);
+            }
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+
+    private void addLocation(Location location) {
+        String id = location.getId();
+        long version = location.getVersion();
+
+        synchronized (texts) {
+            if (version == Location.DELETED) {
+                texts.remove(id);
+                return;
+            }
+
+            seen.add(id);
+
+            Text text = texts.get(id);
+            if (text != null && text.version == version) return;
+        }
+
+        ingestionPipeline.submit(location, chars -> {
+            String text = chars.toString();
+
+            synchronized (texts) {
+                texts.put(id, new Text(id, version, text));
+            }
+
+            LOGGER.debug("Extracted {}", id);
+        });
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.qaware.mcp.tools.knowledge;
+
+import com.carrotsearch.hppc.procedures.IntIntProcedure;
+
+/**
+ * The per position arrays of a {@link SimpleDoc}: token ids, source offsets and per token occurrence chains.
+ * <p>
+ * Implementations are immutable once handed to a {@link SimpleDoc} and can be read by many threads concurrently. They
+ * either live on the heap ({@link HeapTokenData}) or in a memory-mapped file ({@link TokenStore}).
+ */
+interface TokenData {
+
+    /** Returns the number of positions. */
+    int size();
+
+    int tokenId(int pos);
+
+    /** Returns the previous position of the token at {@code pos} or {@link SimpleDoc#NOT_FOUND}. */
+    int previous(int pos);
+
+    int begin(int pos);
+
+    int end(int pos);
+
+    /** Returns the last position of the token or {@link SimpleDoc#NOT_FOUND}. */
+    int lastPos(int tokenId);
+
+    /** Calls the procedure with each distinct token id and its last position. */
+    void forEachToken(IntIntProcedure procedure);
+
+}
@@ -0,0 +1,72 @@
+package com.qaware.mcp.tools.knowledge;
+
+/**
+ * Blocked Bloom filter over the token ids of a document, so that most documents not containing a query term are
+ * rejected without the hash lookup of {@link TokenData#lastPos(int)} (or the binary search of a mapped one).
+ * <p>
+ * Each token id selects one block of 8 longs (512 bits, a cache line) and sets one bit in each of its longs, so a probe
+ * reads a single cache line. With {@link #BITS_PER_TOKEN} bits per distinct token about 0.5% of the probes for absent
+ * tokens are false positives; there are no false negatives.
+ * <p>
+ * Immutable after construction, thread-safe.
+ */
+final class TokenFilter {
+
+    private static final int BITS_PER_TOKEN = 12;
+
+    private static final int BLOCK_LONGS = 8;
+
+    private final long[] words;
+
+    private final int blocks;
+
+
+    /** Builds the filter of all tokens of the token data. */
+    TokenFilter(TokenData tokenData) {
+        int[] count = { 0 };
+        tokenData.forEachToken((tokenId, lastPos) -> count[0]++);
+
+        blocks = Math.max(1, (count[0] * BITS_PER_TOKEN + 511) / 512);
+        words  = new long[blocks * BLOCK_LONGS];
+
+        tokenData.forEachToken((tokenId, lastPos) -> {
+            long hash = mix(tokenId);
+            int block = block(hash);
+            long bits = mix(hash);
+
+            for (int i = 0; i < BLOCK_LONGS; i++) words[block + i] |= 1L << (bits >>> 6 * i);
+        });
+    }
+
+
+    /** Returns false if the token is certainly not in the document. */
+    boolean mayContain(int tokenId) {
+        long hash = mix(tokenId);
+        int block = block(hash);
+        long bits = mix(hash);
+
+        for (int i = 0; i < BLOCK_LONGS; i++) {
+            if ((words[block + i] & 1L << (bits >>> 6 * i)) == 0) return false; // the shift only uses the low 6 bits
+        }
+
+        return true;
+    }
+
+
+    /** Returns the index of the first long of the block of the hash, from its upper bits by multiply-shift. */
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+    }
+
+
+    /** The finalizer of MurmurHash3: dictionary ids are dense, so their bits need to be spread. */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.procedures.IntIntProcedure;
+
+/**
+ * Moves {@link TokenData} and source texts ({@link Utf8Source}) into memory-mapped files, so the OS page cache holds
+ * them instead of the heap.
+ * <p>
+ * Documents are appended to segment files of {@link #SEGMENT_SIZE} bytes (larger documents get a segment of their
+ * own). Segment files are deleted right after mapping: the mapping keeps the data alive, and the OS reclaims the space
+ * once the garbage collector unmapped a segment, i.e. once no document references it anymore. Space of removed
+ * documents within a live segment is not reused. Texts streamed by {@link #newSource()} get a file of their own.
+ * <p>
+ * Layout of a document (native byte order ints): size, number of distinct tokens, token ids, previous positions,
+ * begin/end pairs, distinct token ids (sorted) and their last positions.
+ * <p>
+ * <b>Thread Safety:</b> Storing is synchronized. The returned token data and texts are immutable.
+ */
+final class TokenStore {
+
+    static final int SEGMENT_SIZE = 1 << 28;
+
+    private final Path dir;
+
+    private MappedByteBuffer segment;
+
+    private int used;
+
+
+    TokenStore(Path dir) {
+        this.dir = dir;
+    }
+
+
+    /** Copies the token data into a mapped segment. */
+    synchronized TokenData store(TokenData tokenData) {
+        int size = tokenData.size();
+
+        long[] lastPos = new long[countTokens(tokenData)];
+        int[] count = { 0 };
+        tokenData.forEachToken((tokenId, pos) -> lastPos[count[0]++] = (long) tokenId << 32 | pos);
+        Arrays.sort(lastPos); // token ids are not negative
+
+        long bytes = 4L * (2 + 4L * size + 2L * lastPos.length);
+        if (bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("document too large: " + size + " positions");
+
+        IntBuffer ints = allocate((int) bytes).asIntBuffer();
+
+        ints.put(0, size);
+        ints.put(1, lastPos.length);
+
+        int offset = 2;
+        for (int pos = 0; pos < size; pos++) ints.put(offset++, tokenData.tokenId(pos));
+        for (int pos = 0; pos < size; pos++) ints.put(offset++, tokenData.previous(pos));
+        for (int pos = 0; pos < size; pos++) {
+            ints.put(offset++, tokenData.begin(pos));
+            ints.put(offset++, tokenData.end(pos));
+        }
+        for (long entry : lastPos) ints.put(offset++, (int) (entry >>> 32));
+        for (long entry : lastPos) ints.put(offset++, (int) entry);
+
+        return new MappedTokenData(ints);
+    }
+
+
+    /** Copies the source text into a mapped segment as UTF-8, see {@link Utf8Source}. */
+    synchronized Utf8Source store(CharSequence source) {
+        return Utf8Source.encode(source, this::allocate);
+    }
+
+
+    /** Returns a builder encoding a source text appended piece by piece into a file of its own, see {@link Utf8Source.Builder}. */
+    Utf8Source.Builder newSource() {
+        try {
+            Files.createDirectories(dir);
+            return new Utf8Source.Builder(Files.createTempFile(dir, "source-", ".bin"));
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    private static int countTokens(TokenData tokenData) {
+        int[] count = { 0 };
+        tokenData.forEachToken((tokenId, pos) -> count[0]++);
+        return count[0];
+    }
+
+
+    private ByteBuffer allocate(int bytes) {
+        if (segment == null || used + bytes > segment.capacity()) {
+            segment = map(Math.max(bytes, SEGMENT_SIZE));
+            used    = 0;
+        }
+
+        ByteBuffer slice = segment.slice(used, bytes).order(ByteOrder.nativeOrder());
+        used = Math.min(segment.capacity(), (used + bytes + 7) & ~7); // keep the int arrays aligned
+        return slice;
+    }
+
+
+    private MappedByteBuffer map(int size) {
+        try {
+            Files.createDirectories(dir);
+            Path file = Files.createTempFile(dir, "tokens-", ".bin");
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /** {@link TokenData} read from a mapped segment. Only absolute reads, so it can be shared by threads. */
+    private static final class MappedTokenData implements TokenData {
+
+        private final IntBuffer ints;
+
+        private final int size;
+
+        private final int tokenCount;
+
+
+        MappedTokenData(IntBuffer ints) {
+            this.ints  = ints;
+            size       = ints.get(0);
+            tokenCount = ints.get(1);
+        }
+
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+
+        @Override
+        public int tokenId(int pos) {
+            return ints.get(2 + pos);
+        }
+
+
+        @Override
+        public int previous(int pos) {
+            return ints.get(2 + size + pos);
+        }
+
+
+        @Override
+        public int begin(int pos) {
+            return ints.get(2 + 2 * size + 2 * pos);
+        }
+
+
+        @Override
+        public int end(int pos) {
+            return ints.get(2 + 2 * size + 2 * pos + 1);
+        }
+
+
+        @Override
+        public int lastPos(int tokenId) {
+            int keys = 2 + 4 * size;
+
+            int low  = 0;
+            int high = tokenCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int key = ints.get(keys + mid);
+
+                if (key < tokenId) {
+                    low = mid + 1;
+                } else if (key > tokenId) {
+                    high = mid - 1;
+                } else {
+                    return ints.get(keys + tokenCount + mid);
+                }
+            }
+
+            return SimpleDoc.NOT_FOUND;
+        }
+
+
+        @Override
+        public void forEachToken(IntIntProcedure procedure) {
+            int keys = 2 + 4 * size;
+            for (int i = 0; i < tokenCount; i++) procedure.apply(ints.get(keys + i), ints.get(keys + tokenCount + i));
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+
+/**
+ * Selects the {@code k} highest scores of all positions of all documents: a bounded min-heap whose root is the lowest
+ * score selected so far (the floor).
+ * <p>
+ * Usage: {@link #reset(int)}, {@link #add(float)} the scores (documents whose maximal score is not above
+ * {@link #floor()} can be skipped), then ask {@link #select(float)} for each score in output order. Exactly
+ * {@code min(k, number of positive scores)} scores are selected: of the scores equal to the lowest selected one, only as
+ * many as fit into the heap are selected, the first ones asked for.
+ * <p>
+ * Not thread-safe: each query uses its own instance.
+ */
+final class TopScores {
+
+    /** Smaller scores are ignored, so that the fading tails of the smoothing do not fill up the budget. */
+    static final float MIN_SCORE = 0.00001f;
+
+    private float[] heap = new float[16];
+
+    private int capacity;
+
+    private int size;
+
+    private float threshold;
+
+    private int ties;
+
+
+    /** Prepares the selection of at most {@code capacity} scores. */
+    TopScores reset(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        size          = 0;
+        threshold     = Float.NaN;
+        return this;
+    }
+
+
+    /**
+     * Prepares the selection of the scores above {@code threshold} and of the first {@code ties} scores equal to it,
+     * e.g. as merged from the selections of several corpora. Nothing can be added.
+     */
+    TopScores reset(float threshold, int ties) {
+        capacity       = 0;
+        size           = 0;
+        this.threshold = threshold;
+        this.ties      = ties;
+        return this;
+    }
+
+
+    /** Returns the score a new score must exceed to be selected, zero while fewer than {@code k} scores were added. */
+    float floor() {
+        return size < capacity ? 0 : size == 0 ? Float.POSITIVE_INFINITY : heap[0];
+    }
+
+
+    void add(float score) {
+        if (score < MIN_SCORE) return;
+
+        if (size < capacity) {
+            if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+            heap[size] = score;
+            siftUp(size++);
+
+        } else if (size > 0 && score > heap[0]) {
+            heap[0] = score;
+            siftDown(0);
+        }
+    }
+
+
+    /** Adds the scores selected by another instance, e.g. to merge the selections of several shards. */
+    void addAll(TopScores topScores) {
+        for (int i = 0; i < topScores.size; i++) add(topScores.heap[i]);
+    }
+
+
+    /** Returns the lowest selected score, {@link Float#POSITIVE_INFINITY} if none. Ends adding. */
+    float threshold() {
+        if (Float.isNaN(threshold)) {
+            threshold = size == 0 ? Float.POSITIVE_INFINITY : heap[0];
+
+            ties = 0;
+            for (int i = 0; i < size; i++) if (heap[i] == threshold) ties++;
+        }
+
+        return threshold;
+    }
+
+
+    /** Returns the number of selected scores equal to the {@link #threshold()}. Ends adding, call before selecting. */
+    int ties() {
+        threshold();
+        return ties;
+    }
+
+
+    /** Returns the selected scores, descending. */
+    float[] scores() {
+        float[] scores = Arrays.copyOf(heap, size);
+        Arrays.sort(scores);
+
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            float score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+
+        return scores;
+    }
+
+
+    /** Returns true if the score is selected. Call once per score, in output order. */
+    boolean select(float score) {
+        float min = threshold();
+
+        if (score > min) return true;
+        if (score < min || ties == 0) return false;
+
+        ties--;
+        return true;
+    }
+
+
+    private void siftUp(int i) {
+        float value = heap[i];
+
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) break;
+
+            heap[i] = heap[parent];
+            i = parent;
+        }
+
+        heap[i] = value;
+    }
+
+
+    private void siftDown(int i) {
+        float value = heap[i];
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= value) break;
+
+            heap[i] = heap[child];
+            i = child;
+        }
+
+        heap[i] = value;
+    }
+
+}
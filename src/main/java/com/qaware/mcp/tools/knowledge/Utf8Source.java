@@ -0,0 +1,322 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+/**
+ * The source text of a document stored as UTF-8 in a (typically memory-mapped) {@link ByteBuffer}. Only the ranges
+ * actually requested via {@link #subSequence(int, int)} are decoded, so the text does not need to live on the heap.
+ * <p>
+ * Offsets are char (UTF-16) offsets like in {@link String}. Every {@link #STEP} chars a checkpoint stores the byte
+ * offset of the code point containing that char; decoding starts at the checkpoint before the requested range.
+ * Unpaired surrogates are stored as {@code '?'}, so the length and all offsets stay the same.
+ * <p>
+ * Immutable, only absolute reads on the buffer: can be used by many threads concurrently.
+ */
+final class Utf8Source implements CharSequence {
+
+    static final int STEP = 64;
+
+    private final ByteBuffer bytes;
+
+    /** Per checkpoint: byte offset * 2, plus 1 if the checkpoint char is the second half of a surrogate pair. */
+    private final int[] checkpoints;
+
+    private final int length;
+
+
+    private Utf8Source(ByteBuffer bytes, int[] checkpoints, int length) {
+        this.bytes       = bytes;
+        this.checkpoints = checkpoints;
+        this.length      = length;
+    }
+
+
+    /** Encodes the chars into a buffer of the exact size returned by the allocator. */
+    static Utf8Source encode(CharSequence chars, IntFunction<ByteBuffer> allocator) {
+        int length = chars.length();
+
+        long byteLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+
+            if (isPair(chars, i)) {
+                byteLength += 4;
+                i++;
+            } else {
+                byteLength += c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+
+        if (byteLength > Integer.MAX_VALUE / 2) throw new IllegalArgumentException("text too large: " + length + " chars");
+
+        ByteBuffer bytes = allocator.apply((int) byteLength);
+        int[] checkpoints = new int[length / STEP + 1];
+
+        int offset = 0;
+        for (int i = 0; i < length; i++) {
+            if (i % STEP == 0) checkpoints[i / STEP] = offset * 2;
+
+            char c = chars.charAt(i);
+
+            if (isPair(chars, i)) {
+                if ((i + 1) % STEP == 0) checkpoints[(i + 1) / STEP] = offset * 2 + 1;
+
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                bytes.put(offset++, (byte) (0xF0 | codePoint >> 18));
+                bytes.put(offset++, (byte) (0x80 | codePoint >> 12 & 0x3F));
+                bytes.put(offset++, (byte) (0x80 | codePoint >> 6 & 0x3F));
+                bytes.put(offset++, (byte) (0x80 | codePoint & 0x3F));
+
+            } else if (c < 0x80) {
+                bytes.put(offset++, (byte) c);
+
+            } else if (c < 0x800) {
+                bytes.put(offset++, (byte) (0xC0 | c >> 6));
+                bytes.put(offset++, (byte) (0x80 | c & 0x3F));
+
+            } else if (Character.isSurrogate(c)) {
+                bytes.put(offset++, (byte) '?');
+
+            } else {
+                bytes.put(offset++, (byte) (0xE0 | c >> 12));
+                bytes.put(offset++, (byte) (0x80 | c >> 6 & 0x3F));
+                bytes.put(offset++, (byte) (0x80 | c & 0x3F));
+            }
+        }
+
+        if (length % STEP == 0) checkpoints[length / STEP] = offset * 2;
+
+        return new Utf8Source(bytes, checkpoints, length);
+    }
+
+
+    /**
+     * Encodes chars appended one window after the other into a file, for texts too large to be held on the heap, see
+     * {@link TokenStore#newSource()}. {@link #build()} maps the file. Not thread-safe.
+     */
+    static final class Builder implements Appendable {
+
+        private final Path file;
+
+        private final OutputStream out;
+
+        private final IntArrayList checkpoints = new IntArrayList();
+
+        private int length;
+
+        private long offset;
+
+        /** A high surrogate appended last, written once it is known whether a low surrogate follows. */
+        private char high;
+
+
+        Builder(Path file) {
+            this.file = file;
+
+            try {
+                out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+
+        @Override
+        public Builder append(CharSequence chars) {
+            return append(chars, 0, chars.length());
+        }
+
+
+        @Override
+        public Builder append(CharSequence chars, int start, int end) {
+            for (int i = start; i < end; i++) append(chars.charAt(i));
+            return this;
+        }
+
+
+        @Override
+        public Builder append(char c) {
+            try {
+                int index = length++;
+
+                if (high != 0) {
+                    if (Character.isLowSurrogate(c)) {
+                        if (index % STEP == 0) checkpoint(1);
+
+                        int codePoint = Character.toCodePoint(high, c);
+                        write(0xF0 | codePoint >> 18);
+                        write(0x80 | codePoint >> 12 & 0x3F);
+                        write(0x80 | codePoint >> 6 & 0x3F);
+                        write(0x80 | codePoint & 0x3F);
+
+                        high = 0;
+                        return this;
+                    }
+
+                    write('?');
+                    high = 0;
+                }
+
+                if (index % STEP == 0) checkpoint(0);
+
+                if (Character.isHighSurrogate(c)) {
+                    high = c;
+                } else if (c < 0x80) {
+                    write(c);
+                } else if (c < 0x800) {
+                    write(0xC0 | c >> 6);
+                    write(0x80 | c & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    write('?');
+                } else {
+                    write(0xE0 | c >> 12);
+                    write(0x80 | c >> 6 & 0x3F);
+                    write(0x80 | c & 0x3F);
+                }
+
+                return this;
+
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+
+        /** Maps the file and deletes it, the mapping keeps the data alive. */
+        Utf8Source build() {
+            try {
+                if (high != 0) write('?');
+                if (length % STEP == 0) checkpoint(0);
+                if (offset > Integer.MAX_VALUE / 2) throw new IllegalArgumentException("text too large: " + length + " chars");
+
+                out.close();
+
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE)) {
+                    return new Utf8Source(channel.map(FileChannel.MapMode.READ_ONLY, 0, offset), checkpoints.toArray(), length);
+                }
+
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+
+        /** Deletes the file after a failure. */
+        void discard() {
+            try {
+                out.close();
+                Files.deleteIfExists(file);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+
+        private void checkpoint(int secondHalf) {
+            if (offset > Integer.MAX_VALUE / 2) throw new IllegalArgumentException("text too large: " + length + " chars");
+
+            checkpoints.add((int) offset * 2 + secondHalf);
+        }
+
+
+        private void write(int b) throws IOException {
+            out.write(b);
+            offset++;
+        }
+
+    }
+
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+
+    @Override
+    public char charAt(int index) {
+        return subSequence(index, index + 1).charAt(0);
+    }
+
+
+    /** Decodes the chars {@code [start, end)}. */
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) throw new IndexOutOfBoundsException(start + ", " + end + ", " + length);
+        if (start == end) return "";
+
+        int checkpoint = checkpoints[start / STEP];
+
+        int offset = checkpoint >>> 1;
+        int index  = start / STEP * STEP - (checkpoint & 1);
+
+        while (index + chars(offset) <= start) { // skip to the code point containing start
+            index  += chars(offset);
+            offset += byteCount(offset);
+        }
+
+        int skip  = start - index;
+        int begin = offset;
+
+        while (index < end) {
+            index  += chars(offset);
+            offset += byteCount(offset);
+        }
+
+        byte[] buffer = new byte[offset - begin];
+        bytes.get(begin, buffer);
+
+        String decoded = new String(buffer, StandardCharsets.UTF_8);
+        return skip == 0 && index == end ? decoded : decoded.substring(skip, skip + end - start);
+    }
+
+
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+
+    /** Writes the UTF-8 bytes prefixed by their number, like {@link IndexFile#writeChars(DataOutput, CharSequence)}. */
+    void write(DataOutput out) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+
+        out.writeInt(bytes.capacity());
+        for (int offset = 0; offset < bytes.capacity(); offset += buffer.length) {
+            int count = Math.min(buffer.length, bytes.capacity() - offset);
+            bytes.get(offset, buffer, 0, count);
+            out.write(buffer, 0, count);
+        }
+    }
+
+
+    private int byteCount(int offset) {
+        int lead = bytes.get(offset) & 0xFF;
+        return lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+    }
+
+
+    /** Returns the number of UTF-16 chars of the code point starting at the byte offset. */
+    private int chars(int offset) {
+        return (bytes.get(offset) & 0xFF) >= 0xF0 ? 2 : 1;
+    }
+
+
+    private static boolean isPair(CharSequence chars, int i) {
+        return Character.isHighSurrogate(chars.charAt(i)) && i + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(i + 1));
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.qaware.mcp.tools.knowledge;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link SimpleDoc#smooth(float[], Smoothing)} using the Vector API ({@code jdk.incubator.vector}, the JVM needs
+ * {@code --add-modules jdk.incubator.vector}): SIMD search for hits, SIMD kernel sums and SIMD max-decay sweeps.
+ * <p>
+ * The hits and the decay are bit-identical to the scalar code, the kernel sums may differ in the last bits (float lanes
+ * instead of a sequential double sum). Only referenced by {@link SimpleDoc} if {@link SimpleDoc#VECTORIZED}, so this
+ * class is never loaded without the module.
+ */
+enum VectorSmoothing {
+
+    ;
+
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    private static final FloatVector IOTA = FloatVector.zero(FLOATS).addIndex(1);
+
+    private static final FloatVector ONE = FloatVector.broadcast(FLOATS, 1);
+
+
+    /** Returns true if the hardware has SIMD registers large enough to pay off. */
+    static boolean isAccelerated() {
+        return FLOATS.length() >= 4 && FLOATS.length() == INTS.length();
+    }
+
+
+    /** Like {@link SimpleDoc#smoothScalar(float[], Smoothing)}. */
+    static float smooth(float[] scores, Smoothing smoothing) {
+        int[] hits = hits(scores);
+        if (hits.length == 0) return 0;
+
+        float[] hitScores = new float[hits.length];
+        for (int i = 0; i < hits.length; i++) hitScores[i] = scores[hits[i]];
+
+        float[] smoothed = new float[hits.length];
+        smoothing.spread(hits, hitScores, hits.length, smoothed, true);
+
+        float max = 0;
+        for (int i = 0; i < hits.length; i++) max = Math.max(max, scores[hits[i]] = smoothed[i]);
+
+        int r = 0;
+        for (int i = -1; i < hits.length; i++) {
+            int l = r;
+            r = i == hits.length - 1 ? scores.length - 1 : hits[i + 1];
+
+            decay(scores, scores[l], scores[r], l, r);
+        }
+
+        return max;
+    }
+
+
+    /**
+     * Like {@link SimpleDoc#kernelScalar(int[], float[], int, int)}. The weights {@code 1 / (1 + distance)} are computed
+     * per lane, which gives the same floats as the precomputed table of the scalar code without a gather.
+     */
+    static float kernel(int[] hits, float[] hitScores, int count, int i) {
+        int pos = hits[i];
+
+        int from = i;
+        while (from > 0 && pos - hits[from - 1] <= SimpleDoc.MAX_DIST) from--;
+
+        int to = i + 1;
+        while (to < count && hits[to] - pos <= SimpleDoc.MAX_DIST) to++;
+
+        FloatVector sum = FloatVector.zero(FLOATS);
+
+        for (int j = from; j < to; j += FLOATS.length()) {
+            VectorMask<Float> mask = FLOATS.indexInRange(j, to);
+
+            // lanes beyond the window load zero scores and thus add nothing
+            IntVector dist = IntVector.fromArray(INTS, hits, j, mask.cast(INTS)).sub(pos).abs();
+            FloatVector weight = ONE.div(((FloatVector) dist.convert(VectorOperators.I2F, 0)).add(1));
+
+            sum = sum.add(FloatVector.fromArray(FLOATS, hitScores, j, mask).mul(weight));
+        }
+
+        return sum.reduceLanes(VectorOperators.ADD);
+    }
+
+
+    /** Sets {@code scores[l..r]} to {@link SimpleDoc#decay(float, float, int, int, int)}. */
+    private static void decay(float[] scores, float ll, float rr, int l, int r) {
+        FloatVector zero = FloatVector.zero(FLOATS);
+
+        for (int j = l; j <= r; j += FLOATS.length()) {
+            VectorMask<Float> mask = FLOATS.indexInRange(j, r + 1);
+
+            FloatVector left  = IOTA.add(j - l);       // j - l, exact up to 2^24 positions
+            FloatVector right = left.neg().add(r - l); // r - j
+
+            FloatVector fromLeft  = left.mul(SimpleDoc.SLOPE).neg().add(ll);
+            FloatVector fromRight = right.mul(SimpleDoc.SLOPE).neg().add(rr);
+
+            fromLeft.max(fromRight).max(zero).intoArray(scores, j, mask);
+        }
+    }
+
+
+    /** Returns the positions with a positive score, skipping a whole vector of zeros at once. */
+    private static int[] hits(float[] scores) {
+        int[] hits = new int[16];
+        int count = 0;
+
+        int bound = FLOATS.loopBound(scores.length);
+
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            long bits = FloatVector.fromArray(FLOATS, scores, i).compare(VectorOperators.GT, 0).toLong();
+
+            for (; bits != 0; bits &= bits - 1) {
+                if (count == hits.length) hits = Arrays.copyOf(hits, count * 2);
+                hits[count++] = i + Long.numberOfTrailingZeros(bits);
+            }
+        }
+
+        for (; i < scores.length; i++) {
+            if (scores[i] <= 0) continue;
+
+            if (count == hits.length) hits = Arrays.copyOf(hits, count * 2);
+            hits[count++] = i;
+        }
+
+        return Arrays.copyOf(hits, count);
+    }
+
+}
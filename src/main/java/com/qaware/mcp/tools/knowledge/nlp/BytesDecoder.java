@@ -3,10 +3,14 @@ package com.qaware.mcp.tools.knowledge.nlp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 
 /**
@@ -27,12 +31,20 @@ public class BytesDecoder implements CharSequence {
      */
     private static final int REALLOCATION_THRESHOLD_FACTOR = 20;
 
+    /**
+     * The size of the buffer {@link #reset(Path)} reads the file through.
+     */
+    private static final int READ_SIZE = 1 << 16;
+
     private CharBuffer charBuffer;
 
     private int length;
 
     private char[] chars;
 
+    /** Direct, so the channel reads into it without a copy. Reused by each {@link #reset(Path)}. */
+    private ByteBuffer readBuffer;
+
     private final CharsetDecoder charsetDecoder;
 
 
@@ -75,9 +87,80 @@ public class BytesDecoder implements CharSequence {
      * @param end   the ending index (exclusive) of the subset
      * @return this BytesDecoder instance for method chaining
      */
-    @SuppressWarnings("java:S2259")
     public BytesDecoder reset(byte[] bytes, int begin, int end) {
-        int requiredSize = (int) ((end - begin) * charsetDecoder.maxCharsPerByte() + 1);
+        begin(end - begin);
+
+        check(charsetDecoder.decode(ByteBuffer.wrap(bytes, begin, end - begin), charBuffer, true));
+
+        return end();
+    }
+
+
+    /**
+     * Resets the decoder with the content of the given file. The file is read through a reused direct buffer and decoded
+     * chunk by chunk, without reading it into a byte array first. Only the decoded chars are held, the file is closed
+     * when this method returns.
+     *
+     * @param file the file to decode
+     * @return this BytesDecoder instance for method chaining
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public BytesDecoder reset(Path file) {
+        return reset(file, READ_SIZE);
+    }
+
+
+    /**
+     * Like {@link #reset(Path)}, reading at most {@code readSize} bytes at once.
+     */
+    BytesDecoder reset(Path file, int readSize) {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            if (size * charsetDecoder.maxCharsPerByte() >= Integer.MAX_VALUE) throw new IllegalArgumentException("file too large: " + file);
+
+            begin((int) size);
+
+            if (readBuffer == null || readBuffer.capacity() != readSize) readBuffer = ByteBuffer.allocateDirect(readSize);
+            ByteBuffer byteBuffer = readBuffer.clear();
+
+            long position = 0;
+            boolean last;
+            do { // at least once, the decoder needs the end of input even for an empty file
+                // not beyond the size the chars were allocated for, even if the file grows meanwhile
+                byteBuffer.limit((int) Math.min(byteBuffer.capacity(), byteBuffer.position() + size - position));
+
+                while (byteBuffer.hasRemaining()) {
+                    int read = fileChannel.read(byteBuffer);
+                    if (read < 0) { // shrunk meanwhile
+                        size = position;
+                        break;
+                    }
+                    position += read;
+                }
+
+                last = position == size;
+
+                check(charsetDecoder.decode(byteBuffer.flip(), charBuffer, last));
+
+                // an incomplete char at the end of the chunk stays in the buffer, the next read appends to it
+                byteBuffer.compact();
+                if (! last && ! byteBuffer.hasRemaining()) throw new IllegalArgumentException("read size too small: " + readSize);
+            } while (! last);
+
+            return end();
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /**
+     * Prepares decoding {@code byteLength} bytes.
+     */
+    @SuppressWarnings("java:S2259")
+    private void begin(int byteLength) {
+        int requiredSize = (int) (byteLength * charsetDecoder.maxCharsPerByte() + 1);
 
         int capacity = charBuffer == null ? -1 : charBuffer.capacity();
         if (capacity < requiredSize || capacity > requiredSize * REALLOCATION_THRESHOLD_FACTOR) { // if too small or really oversized...
@@ -86,12 +169,16 @@ public class BytesDecoder implements CharSequence {
 
         charBuffer.clear(); // charBuffer can not be null at this point
 
-        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, begin, end - begin);
         charsetDecoder.reset();
 
         length = 0; // make length invalid if case checks throws exception, we can keep chars as it is
+    }
+
 
-        check(charsetDecoder.decode(byteBuffer, charBuffer, true));
+    /**
+     * Completes decoding.
+     */
+    private BytesDecoder end() {
         check(charsetDecoder.flush(charBuffer));
 
         charBuffer.flip();
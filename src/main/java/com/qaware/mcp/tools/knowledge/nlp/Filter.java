@@ -1,5 +1,7 @@
 package com.qaware.mcp.tools.knowledge.nlp;
 
+import java.io.Reader;
+
 /**
  * The Filter class is an abstract implementation of the {@link Tokens} interface, designed to process
  * and transform token streams. It acts as a wrapper around another {@link Tokens} instance, allowing
@@ -57,10 +59,28 @@ public abstract class Filter implements Tokens {
     @Override
     public Filter reset(CharSequence chars) {
         parent.reset(chars);
+        clear();
+        return this;
+    }
+
+
+    @Override
+    public Filter reset(Reader reader, Appendable source) {
+        parent.reset(reader, source);
+        clear();
         return this;
     }
 
 
+    /**
+     * Clears the state kept from token to token on each reset. This method is intended to be overridden by stateful
+     * subclasses.
+     */
+    protected void clear() {
+        // to override
+    }
+
+
     /**
      * Returns the original character sequence from which tokens are derived.
      *
@@ -80,15 +80,19 @@ public class FilterCombine extends Filter {
     public Filter reset(CharSequence chars) {
         if (chars == this) return this;
 
-        setIndex(INIT);
-        isFromDelegate = false;
-
         delegates.forEach(tokens -> reset(this));
 
         return super.reset(chars);
     }
 
 
+    @Override
+    protected void clear() {
+        setIndex(INIT);
+        isFromDelegate = false;
+    }
+
+
     /**
      * Advances to the next valid token by iterating over the delegates.
      *
@@ -11,9 +11,8 @@ public class FilterDeduplicate extends Filter {
 
 
     @Override
-    public Filter reset(CharSequence chars) {
+    protected void clear() {
         lastHash = 0;
-        return super.reset(chars);
     }
 
 
@@ -40,12 +40,11 @@ public class FilterDisambiguate extends Filter {
 
 
     @Override
-    public Filter reset(CharSequence chars) {
+    protected void clear() {
         lastEnd = INIT;
         emit    = 0;
         count   = 0;
         maxRaw  = 0;
-        return super.reset(chars);
     }
 
 
@@ -1,13 +1,26 @@
 package com.qaware.mcp.tools.knowledge.nlp;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 /**
  * A simple tokenizer implementation that splits a given CharSequence into tokens.
  * Tokens are sequences of letters or digits, separated by whitespace or hyphens.
+ * <p>
+ * A {@link Reader} is tokenized in windows of a fixed size: the chars before the current token are handed on to the
+ * source and dropped, a token reaching the end of the window is carried over to the next one.
  */
 public class TokenizerSimple implements Tokens {
 
     private static final char[] EMPTY_CHAR_ARRAY = {};
 
+    private static final int WINDOW_SIZE = 1 << 16;
+
+
+    private final int windowSize;
 
     private CharSequence chars = "";
 
@@ -19,8 +32,32 @@ public class TokenizerSimple implements Tokens {
     private int end;
 
 
+    private Reader reader;
+
+    private Appendable source;
+
+    private char[] window = EMPTY_CHAR_ARRAY;
+
+    /** The offset of the window in the whole text. */
+    private int offset;
+
+
     private char[] buffer = EMPTY_CHAR_ARRAY;
 
+
+    public TokenizerSimple() {
+        this(WINDOW_SIZE);
+    }
+
+
+    /**
+     * @param aWindowSize the number of chars read at once from a reader
+     */
+    TokenizerSimple(int aWindowSize) {
+        windowSize = aWindowSize;
+    }
+
+
     /**
      * Resets the tokenizer with a new input CharSequence.
      *
@@ -32,6 +69,23 @@ public class TokenizerSimple implements Tokens {
         next   = 0;
         length = aChars.length();
         chars  = aChars;
+        offset = 0;
+        reader = null;
+        source = null;
+        return this;
+    }
+
+
+    @Override
+    public TokenizerSimple reset(Reader aReader, Appendable aSource) {
+        if (window.length != windowSize) window = new char[windowSize];
+
+        next   = 0;
+        length = 0;
+        chars  = CharBuffer.wrap(window);
+        offset = 0;
+        reader = aReader;
+        source = aSource;
         return this;
     }
 
@@ -49,24 +103,32 @@ public class TokenizerSimple implements Tokens {
 
     @Override
     public int begin() {
-        return begin;
+        return offset + begin;
     }
 
 
     @Override
     public int end() {
-        return end;
+        return offset + end;
+    }
+
+
+    @Override
+    public char charAt(int index) {
+        return chars.charAt(begin + index);
     }
 
 
     @Override
     public boolean next() {
-        for (; next < length; next++) {
-            if (Character.isLetterOrDigit(chars.charAt(next))) {
-                scanToken();
-                return true;
+        do {
+            for (; next < length; next++) {
+                if (Character.isLetterOrDigit(chars.charAt(next))) {
+                    scanToken();
+                    return true;
+                }
             }
-        }
+        } while (fill(next));
 
         return false;
     }
@@ -80,20 +142,66 @@ public class TokenizerSimple implements Tokens {
         begin = next;
         end   = next;
 
-        while (++next < length) {
-            char chr = chars.charAt(next);
+        do {
+            while (++next < length) {
+                char chr = chars.charAt(next);
 
-            if (Character.isLetterOrDigit(chr)) {
-                end = next;
-            } else if (Character.isWhitespace(chr) || chr == '-') {
-                break;
+                if (Character.isLetterOrDigit(chr)) {
+                    end = next;
+                } else if (Character.isWhitespace(chr) || chr == '-') {
+                    end++;
+                    return;
+                }
             }
-        }
 
+            next--; // continue with the last char of the window, it is kept
+        } while (fill(begin));
+
+        next++;
         end++;
     }
 
 
+    /**
+     * Reads the next window, keeping the chars from {@code keep} on. The chars before are appended to the source.
+     *
+     * @return {@code false} at the end of the input, the source then has all chars
+     */
+    private boolean fill(int keep) {
+        if (reader == null) return false;
+
+        try {
+            source.append(chars, 0, keep);
+
+            System.arraycopy(window, keep, window, 0, length - keep);
+            offset += keep;
+            length -= keep;
+            next   -= keep;
+            begin  -= keep;
+            end    -= keep;
+
+            if (length == window.length) { // a token longer than the window
+                window = Arrays.copyOf(window, window.length * 2);
+                chars  = CharBuffer.wrap(window);
+            }
+
+            int read = reader.read(window, length, window.length - length);
+
+            if (read < 0) {
+                source.append(chars, 0, length);
+                reader = null;
+                return false;
+            }
+
+            length += read;
+            return true;
+
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
     /**
      * Copies the current token into a char array buffer.
      *
@@ -1,5 +1,7 @@
 package com.qaware.mcp.tools.knowledge.nlp;
 
+import java.io.Reader;
+
 /**
  * The Tokens interface represents a stream of tokens derived from a character sequence.
  * <p>
@@ -70,6 +72,19 @@ public interface Tokens extends CharSequence {
     Tokens reset(CharSequence chars);
 
 
+    /**
+     * Resets the token stream with a reader, which is read and tokenized window by window, so the text never needs to
+     * be held as a whole. {@link #begin()} and {@link #end()} are offsets in the whole text nevertheless: every char
+     * read is appended to {@code source} exactly once and in order, so they are offsets in {@code source}.
+     * {@link #source()} only holds the current window. The reader is not closed.
+     *
+     * @param reader the text to tokenize
+     * @param source receives the text read
+     * @return this Tokens instance for method chaining
+     */
+    Tokens reset(Reader reader, Appendable source);
+
+
     /**
      * Advances to the next token in the stream.
      *
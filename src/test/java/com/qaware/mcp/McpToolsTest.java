@@ -0,0 +1,89 @@
+package com.qaware.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import io.modelcontextprotocol.spec.McpSchema.CompleteRequest;
+import io.modelcontextprotocol.spec.McpSchema.CompleteResult;
+import io.modelcontextprotocol.spec.McpSchema.GetPromptResult;
+import io.modelcontextprotocol.spec.McpSchema.Prompt;
+
+class McpToolsTest {
+
+    static class GlossaryTool {
+
+        @McpPrompt("Explains a term of the glossary")
+        private String explain(@McpParam(name = "term", description = "The term to explain") String term) {
+            return "Explain " + term;
+        }
+
+
+        @McpCompletion("explain")
+        private List<String> completeTerm(@McpParam(name = "term") String term) {
+            return IntStream.range(0, 150).mapToObj(i -> term + i).toList();
+        }
+
+    }
+
+
+    private final GlossaryTool tool = new GlossaryTool();
+
+
+    @Test
+    void promptHasTheArgumentsAndReturnsTheText() {
+        Method method = method(McpPrompt.class);
+        McpPrompt mcpPrompt = method.getAnnotation(McpPrompt.class);
+
+        Prompt prompt = McpTools.getPrompt(method, mcpPrompt);
+        assertEquals("explain", prompt.name());
+        assertEquals("term", prompt.arguments().get(0).name());
+        assertEquals("The term to explain", prompt.arguments().get(0).description());
+
+        GetPromptResult result = McpTools.<Object>getPromptHandler(tool, method, mcpPrompt).apply(null, new McpSchema.GetPromptRequest("explain", Map.of("term", "kafka")));
+
+        assertEquals(McpSchema.Role.USER, result.messages().get(0).role());
+        assertEquals("Explain kafka", ((McpSchema.TextContent) result.messages().get(0).content()).text());
+    }
+
+
+    @Test
+    void completionIsCutToTheProtocolMaximum() {
+        Method method = method(McpCompletion.class);
+
+        McpSchema.PromptReference reference = McpTools.getCompletionReference(method.getAnnotation(McpCompletion.class));
+        assertEquals("explain", reference.name());
+
+        CompleteResult result = McpTools.<Object>getCompletionHandler(tool, method).apply(null, new CompleteRequest(reference, new CompleteRequest.CompleteArgument("term", "ka")));
+
+        assertEquals(McpCompletion.MAX_VALUES, result.completion().values().size());
+        assertEquals("ka0", result.completion().values().get(0));
+        assertEquals(150, result.completion().total());
+        assertTrue(result.completion().hasMore());
+    }
+
+
+    @Test
+    void otherArgumentsAreNotCompleted() {
+        Method method = method(McpCompletion.class);
+
+        CompleteResult result = McpTools.<Object>getCompletionHandler(tool, method).apply(null, new CompleteRequest(new McpSchema.PromptReference("explain"), new CompleteRequest.CompleteArgument("other", "ka")));
+
+        assertEquals(List.of(), result.completion().values());
+        assertFalse(result.completion().hasMore());
+    }
+
+
+    private static Method method(Class<? extends java.lang.annotation.Annotation> annotationClass) {
+        return Reflection.getMethodsWithAnnotations(GlossaryTool.class, annotationClass).keySet().iterator().next();
+    }
+
+}
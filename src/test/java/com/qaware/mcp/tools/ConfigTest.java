@@ -21,4 +21,21 @@ class ConfigTest {
         assertNotNull(Config.get("PATH", FALLBACK)); // from env
     }
 
+
+    @Test
+    void getBoolean_shouldParseValueOrFallBack() {
+        System.setProperty("mcp.test.flag", " true ");
+
+        try {
+            Config.reset();
+
+            assertTrue(Config.getBoolean("MCP_TEST_FLAG", false));
+            assertFalse(Config.getBoolean("*unknown*", false));
+
+        } finally {
+            System.clearProperty("mcp.test.flag");
+            Config.reset();
+        }
+    }
+
 }
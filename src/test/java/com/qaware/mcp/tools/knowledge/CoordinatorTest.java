@@ -0,0 +1,159 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CoordinatorTest {
+
+    private static final List<String> QUERIES = List.of("kafka", "consumer group", "producer number7", "number12 number25", "unknown");
+
+
+    @Test
+    void shardServersGiveSameResultsAsOneCorpus() {
+        List<Location> all = new ArrayList<>();
+        for (int i = 0; i < 30; i++) all.add(location(String.format("doc%02d", i), "Kafka " + (i % 3 == 0 ? "consumer group" : "producer") + " number" + i));
+
+        Corpus corpus = corpus(all);
+
+        // split in id order, the servers are asked in this order
+        try (ShardServer first  = server(all.subList(0, 10));
+             ShardServer second = server(all.subList(10, 25));
+             ShardServer third  = server(all.subList(25, 30))) {
+
+            Coordinator coordinator = new Coordinator(url(first), url(second) + "/", " " + url(third));
+
+            for (String query : QUERIES) {
+                for (int limit : new int[] { 5, 50, 5000 }) assertEquals(corpus.getPassages(query, limit), coordinator.getPassages(query, limit), query + " " + limit);
+            }
+        }
+    }
+
+
+    @Test
+    void interleavedShardServersGiveSamePassages() {
+        List<Location> all = new ArrayList<>();
+        for (int i = 0; i < 30; i++) all.add(location(String.format("doc%02d", i), "Kafka " + (i % 3 == 0 ? "consumer group" : "producer") + " number" + i));
+
+        Corpus corpus = corpus(all);
+
+        List<Location> even = new ArrayList<>();
+        List<Location> odd  = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) (i % 2 == 0 ? even : odd).add(all.get(i));
+
+        try (ShardServer first  = server(odd);
+             ShardServer second = server(even)) {
+
+            Coordinator coordinator = new Coordinator(url(first), url(second));
+
+            // a limit selecting all positions has no ties to cut, the passages are the same in server order
+            for (String query : QUERIES) assertEquals(sortedLines(corpus.getPassages(query, 5000)), sortedLines(coordinator.getPassages(query, 5000)), query);
+
+            String passages = coordinator.getPassages("kafka", 5000);
+            assertTrue(passages.indexOf("doc29") < passages.indexOf("doc00"), passages);
+        }
+    }
+
+
+    @Test
+    void longQueriesAreSent() {
+        try (ShardServer server = server(List.of(location("a", "Kafka consumer")))) {
+            String query = "kafka " + "x".repeat(100_000);
+            assertTrue(new Coordinator(url(server)).getPassages(query, 100).contains("Kafka consumer"));
+
+            assertThrows(IllegalArgumentException.class, () -> new Coordinator(url(server)).getPassages("x".repeat(ShardServer.MAX_QUERY_BYTES + 1), 100));
+        }
+    }
+
+
+    @Test
+    void failingShardServerIsLeftOut() {
+        ShardServer closed = server(List.of(location("a", "Kafka consumer")));
+        closed.close();
+
+        try (ShardServer server = server(List.of(location("b", "Kafka producer")))) {
+            String passages = new Coordinator(url(closed), url(server)).getPassages("kafka", 100);
+
+            assertTrue(passages.contains("producer"), passages);
+            assertFalse(passages.contains("consumer"), passages);
+        }
+    }
+
+
+    @Test
+    void histogramRoundTrips() throws Exception {
+        float[] scores = { 3f, 2f, 2f, 2f, 1f };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardServer.writeHistogram(scores, new DataOutputStream(bytes));
+
+        assertEquals(4 + 3 * 8, bytes.size());
+        assertEquals(List.of(3f, 2f, 2f, 2f, 1f), toList(ShardServer.readHistogram(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 5)));
+
+        assertThrows(IOException.class, () -> ShardServer.readHistogram(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 4));
+        assertThrows(IOException.class, () -> ShardServer.readHistogram(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 2));
+    }
+
+
+    private static List<String> sortedLines(String passages) {
+        return passages.lines().sorted().toList();
+    }
+
+
+    private static List<Float> toList(float[] values) {
+        List<Float> list = new ArrayList<>();
+        for (float value : values) list.add(value);
+        return list;
+    }
+
+
+    private static ShardServer server(List<Location> locations) {
+        return new ShardServer(corpus(locations), null, 0).start();
+    }
+
+
+    private static String url(ShardServer server) {
+        return "http://localhost:" + server.port();
+    }
+
+
+    private static Corpus corpus(List<Location> locations) {
+        return new Corpus(consumer -> {
+            locations.forEach(consumer);
+            return true;
+        });
+    }
+
+
+    private static Location location(String id, String text) {
+        return new Location() {
+
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public long getVersion() {
+                return 1;
+            }
+
+            @Override
+            public CharSequence getChars() {
+                return text;
+            }
+        };
+    }
+
+}
@@ -1,12 +1,26 @@
 package com.qaware.mcp.tools.knowledge;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class CorpusTest {
 
@@ -14,8 +28,55 @@ class CorpusTest {
     void filesystemScannerPopulatesCorpus() throws URISyntaxException {
         // given
         Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
-        Corpus corpus = new Corpus(new FileSystemScanner(resourceDir.toString()));
 
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())));
+    }
+
+
+    @Test
+    void invertedIndexGivesSameResults() throws URISyntaxException {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).invertedIndex(true));
+    }
+
+
+    @Test
+    void sparseScoresGiveSameResults() throws URISyntaxException {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).sparseScores(true));
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).sparseScores(true).invertedIndex(true));
+    }
+
+
+    @Test
+    void exponentialSmoothingGivesSameResults() throws URISyntaxException {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).smoothing(Smoothing.EXPONENTIAL));
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).smoothing(Smoothing.EXPONENTIAL).sparseScores(true));
+    }
+
+
+    @Test
+    void tokenStoreGivesSameResults(@TempDir Path tempDir) throws URISyntaxException {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).tokenStore(tempDir.toString()).invertedIndex(true));
+    }
+
+
+    @Test
+    void shardsGiveSameResults() throws URISyntaxException {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).shards(3));
+        verifyTestCorpus(new Corpus(new FileSystemScanner(resourceDir.toString())).shards(3).invertedIndex(true).sparseScores(true));
+    }
+
+
+    private static void verifyTestCorpus(Corpus corpus) {
         // check getAll
         verify( """
                 🟡 FILE*/Text.txt
@@ -63,6 +124,284 @@ class CorpusTest {
     }
 
 
+    @Test
+    void incrementalScanKeepsUnreportedDocuments() {
+        List<Location> locations = new ArrayList<>(List.of(location("a", 1, "Kafka consumer"), location("b", 1, "Kafka producer")));
+        boolean[] full = { true };
+
+        Corpus corpus = new Corpus(consumer -> {
+            locations.forEach(consumer);
+            return full[0];
+        });
+
+        assertEquals(2, corpus.getPassages("kafka", 10).split("FILE/SOURCE").length - 1);
+
+        // incremental scan: nothing reported means nothing changed
+        full[0] = false;
+        locations.clear();
+        assertEquals(2, corpus.getPassages("kafka", 10).split("FILE/SOURCE").length - 1);
+
+        // incremental scan: explicit deletion
+        locations.add(location("a", Location.DELETED, ""));
+        assertEquals("b", corpus.getPassages("kafka", 10).replaceAll("(?s).*FILE/SOURCE: (\\w+).*", "$1"));
+    }
+
+
+    @Test
+    void resultCacheIsInvalidatedByChanges() {
+        List<Location> locations = new ArrayList<>(List.of(location("a", 1, "Kafka consumer"), location("b", 1, "Kafka producer")));
+
+        Corpus corpus = new Corpus(consumer -> {
+            locations.forEach(consumer);
+            return true;
+        }).resultCache(10, 1 << 20);
+
+        String result = corpus.getPassages("kafka", 10);
+        assertSame(result, corpus.getPassages("the Kafka", 10)); // same normalized query
+        assertNotSame(result, corpus.getPassages("kafka", 20));  // other limit
+
+        locations.set(1, location("b", 2, "Kafka streams"));
+        String modified = corpus.getPassages("kafka", 10);
+        assertTrue(modified.contains("streams"), modified);
+
+        locations.remove(1);
+        assertEquals(1, corpus.getPassages("kafka", 10).split("FILE/SOURCE").length - 1);
+    }
+
+
+    @Test
+    void getAllChunksSplitsBetweenDocuments() {
+        StringBuilder words = new StringBuilder(); // distinct words, repeated ones are skipped by the tokenizer
+        for (int i = 0; words.length() < Corpus.CHUNK_SIZE; i++) {
+            words.append("kafka");
+            for (char c : Integer.toString(i, 26).toCharArray()) words.append((char) ('a' + Character.digit(c, 26)));
+            words.append(' ');
+        }
+        String large = words.toString();
+        List<Location> locations = List.of(location("a", 1, "Kafka consumer"), location("b", 1, large), location("c", 1, "Kafka producer"));
+
+        Corpus corpus = new Corpus(consumer -> {
+            locations.forEach(consumer);
+            return true;
+        });
+
+        List<String> chunks = new ArrayList<>();
+        corpus.getAllChunks().forEach(chunks::add);
+
+        assertEquals(2, chunks.size()); // a and b fill the first chunk
+        assertTrue(chunks.get(0).contains("consumer") && chunks.get(0).contains(large.trim()));
+        assertTrue(chunks.get(1).contains("producer"));
+        assertEquals(corpus.getAll(), String.join("", chunks));
+    }
+
+
+    @Test
+    void shardedCorpusFollowsChanges() {
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < 40; i++) locations.add(location("doc" + i, 1, "Kafka " + (i % 3 == 0 ? "consumer group" : "producer") + " number" + i));
+
+        Corpus single  = new Corpus(consumer -> { locations.forEach(consumer); return true; });
+        Corpus sharded = new Corpus(consumer -> { locations.forEach(consumer); return true; }).shards(4).invertedIndex(true);
+
+        List<String> queries = List.of("kafka", "consumer group", "producer number7", "number12 number13");
+        for (String query : queries) assertEquals(single.getPassages(query, 5), sharded.getPassages(query, 5));
+
+        locations.set(7, location("doc7", 2, "Kafka consumer group rebalancing"));
+        locations.remove(12);
+        for (String query : queries) assertEquals(single.getPassages(query, 5), sharded.getPassages(query, 5));
+    }
+
+
+    @Test
+    void compactedDictionaryKeepsResults(@TempDir Path tempDir) {
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) locations.add(location("doc" + i, 0, "Kafka consumer group number" + i + " churn0x" + i));
+
+        Corpus plain     = new Corpus(consumer -> { locations.forEach(consumer); return true; });
+        Corpus compacted = new Corpus(consumer -> { locations.forEach(consumer); return true; }).dictionaryCompaction(80);
+        Corpus indexed   = new Corpus(consumer -> { locations.forEach(consumer); return true; }).dictionaryCompaction(80)
+                .shards(3).invertedIndex(true).sparseScores(true);
+        Corpus mapped    = new Corpus(consumer -> { locations.forEach(consumer); return true; }).dictionaryCompaction(80)
+                .tokenStore(tempDir.toString());
+
+        List<String> queries = List.of("kafka", "consumer number3", "churn5x5 churn5x6", "number17 group");
+        for (int round = 1; round <= 10; round++) {
+            for (String query : queries) {
+                String expected = plain.getPassages(query, 20);
+                assertEquals(expected, compacted.getPassages(query, 20), query);
+                assertEquals(expected, indexed.getPassages(query, 20), query);
+                assertEquals(expected, mapped.getPassages(query, 20), query);
+            }
+
+            // every round rewrites the documents with new words
+            for (int i = 0; i < locations.size(); i++) locations.set(i, location("doc" + i, round, "Kafka consumer group number" + i + " churn" + round + "x" + i));
+        }
+
+        assertTrue(compacted.dictionarySize() < plain.dictionarySize() / 2, compacted.dictionarySize() + " terms");
+        assertEquals(compacted.dictionarySize(), indexed.dictionarySize());
+        assertEquals(plain.dictionarySize(), mapped.dictionarySize()); // a token store would only grow by compactions
+    }
+
+
+    @Test
+    void prefixTermMatchesTermsStartingWithIt() {
+        List<Location> locations = List.of(
+                location("a", 1, "Kafka consumer rebalancing"),
+                location("b", 1, "Kafkaesque bureaucracy"),
+                location("c", 1, "Zookeeper ensemble"));
+
+        Corpus corpus = new Corpus(consumer -> { locations.forEach(consumer); return true; }).resultCache(10, 1 << 20);
+
+        assertEquals("", corpus.getPassages("kafk", 100));
+
+        String passages = corpus.getPassages("kafk*", 100);
+        assertTrue(passages.contains("Kafka consumer") && passages.contains("Kafkaesque"), passages);
+        assertFalse(passages.contains("Zookeeper"), passages);
+
+        assertEquals(corpus.getPassages("zookeeper", 100), corpus.getPassages("zoo*", 100));
+    }
+
+
+    @Test
+    void completesLastWord() {
+        List<Location> locations = List.of(location("a", 1, "Kafka consumer rebalancing"), location("b", 1, "Kafkaesque bureaucracy"));
+
+        Corpus corpus = new Corpus(consumer -> { locations.forEach(consumer); return true; });
+        corpus.getPassages("kafka", 10);
+
+        // the words as written in the documents, not the normalized and stemmed terms, the typed text is kept
+        assertEquals(List.of("consumer Kafka", "consumer Kafkaesque"), corpus.complete("consumer Kafk", 10));
+        assertEquals(List.of("consumer kafka", "consumer kafkaesque"), corpus.complete("consumer kafk", 10));
+        assertEquals(List.of("kafka consumer"), corpus.complete("kafka consu", 10));
+        assertEquals(List.of("bureau rebalancing"), corpus.complete("bureau rebal", 10));
+
+        assertEquals(List.of("consumer Kafka"), corpus.complete("consumer Kafk", 1));
+        assertEquals(List.of(), corpus.complete("consumer ", 10));
+        assertEquals(List.of(), corpus.complete("consumer Kafkaesque", 10));
+    }
+
+
+    @Test
+    void concurrentQueriesGiveSameResults() throws Exception {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+        Corpus corpus = new Corpus(new FileSystemScanner(resourceDir.toString()));
+
+        List<String> queries = List.of("contained deutsch", "hello world", "text cell row", "fülltext länger");
+        List<String> expected = queries.stream().map(query -> corpus.getPassages(query, 10)).toList();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String query = queries.get(i % queries.size());
+                futures.add(executorService.submit(() -> corpus.getPassages(query, 10)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) assertEquals(expected.get(i % queries.size()), futures.get(i).get());
+
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+
+    @Test
+    void indexFileRestoresCorpus(@TempDir Path tempDir) {
+        String indexFile = tempDir.resolve("index.bin").toString();
+
+        AtomicInteger reads = new AtomicInteger();
+        List<Location> locations = new ArrayList<>(List.of(location("a", 1, "Kafka consumer lag", reads), location("b", 1, "Kafka producer", reads)));
+        Scanner scanner = consumer -> {
+            locations.forEach(consumer);
+            return true;
+        };
+
+        String expected = passagesWritten(new Corpus(scanner).indexFile(indexFile), "kafka lag");
+        assertEquals(2, reads.get());
+
+        // restart: nothing is re-indexed
+        assertEquals(expected, passagesWritten(new Corpus(scanner).indexFile(indexFile), "kafka lag"));
+        assertEquals(2, reads.get());
+
+        // restart after a change: only the stale document is re-indexed
+        locations.set(1, location("b", 2, "Kafka producer lag", reads));
+        String changed = passagesWritten(new Corpus(scanner).indexFile(indexFile), "lag");
+        assertEquals(2, changed.split("FILE/SOURCE").length - 1);
+        assertEquals(3, reads.get());
+
+        // restart with memory-mapped storage
+        Corpus mapped = new Corpus(scanner).tokenStore(tempDir.toString()).indexFile(indexFile);
+        assertEquals(changed, passagesWritten(mapped, "lag"));
+        assertEquals(3, reads.get());
+
+        // the index file written from memory-mapped storage is read back the same
+        locations.set(0, location("a", 2, "Kafka consumer lag again", reads));
+        String expectedMapped = passagesWritten(mapped, "lag");
+        assertEquals(expectedMapped, new Corpus(scanner).indexFile(indexFile).getPassages("lag", 10));
+        assertEquals(4, reads.get());
+    }
+
+
+    @Test
+    void corruptIndexFileIsDiscarded(@TempDir Path tempDir) throws IOException {
+        Path indexFile = tempDir.resolve("index.bin");
+
+        AtomicInteger reads = new AtomicInteger();
+        List<Location> locations = List.of(location("a", 1, "Kafka consumer lag", reads), location("b", 1, "Kafka producer", reads));
+        Scanner scanner = consumer -> {
+            locations.forEach(consumer);
+            return true;
+        };
+
+        String expected = passagesWritten(new Corpus(scanner).indexFile(indexFile.toString()), "kafka lag");
+
+        byte[] bytes = Files.readAllBytes(indexFile);
+        for (int length : new int[] { bytes.length / 2, bytes.length - 1 }) {
+            Files.write(indexFile, Arrays.copyOf(bytes, length));
+
+            reads.set(0);
+            assertEquals(expected, new Corpus(scanner).indexFile(indexFile.toString()).getPassages("kafka lag", 10));
+            assertEquals(2, reads.get()); // indexed from scratch
+            assertFalse(Files.exists(indexFile));
+        }
+    }
+
+
+    /** Returns the passages and writes the index file right away instead of after the delay. */
+    private static String passagesWritten(Corpus corpus, String query) {
+        String passages = corpus.getPassages(query, 10);
+        corpus.writeIndexFile();
+        return passages;
+    }
+
+
+    private static Location location(String id, long version, String text) {
+        return location(id, version, text, new AtomicInteger());
+    }
+
+
+    private static Location location(String id, long version, String text, AtomicInteger reads) {
+        return new Location() {
+
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public long getVersion() {
+                return version;
+            }
+
+            @Override
+            public CharSequence getChars() {
+                reads.incrementAndGet();
+                return text;
+            }
+        };
+    }
+
+
     private static void verify(String expected, String actual) {
         assertEquals(normalize(expected), normalize(actual));
     }
@@ -1,8 +1,20 @@
 package com.qaware.mcp.tools.knowledge;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.jupiter.api.Test;
 
 class DictionaryTest {
@@ -31,4 +43,120 @@ class DictionaryTest {
         assertEquals(2, dictionary.size());
     }
 
+
+    @Test
+    void writeAndReadKeepIds() throws IOException {
+        Dictionary dictionary = new Dictionary();
+        for (String word : "kafka consumer lag".split(" ")) dictionary.add(word.toCharArray(), 0, word.length());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        dictionary.write(new DataOutputStream(bytes));
+
+        Dictionary read = new Dictionary();
+        read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(3, read.size());
+        assertEquals("consumer", read.get(1));
+        assertEquals(2, read.get("lag"));
+        assertEquals(3, read.add("partition".toCharArray(), 0, 9));
+    }
+
+
+    @Test
+    void storesWordsAsUtf8() {
+        Dictionary dictionary = new Dictionary();
+
+        for (String word : new String[] { "kafka", "fülltext", "größe", "日本語", "emoji\uD83D\uDE00" }) {
+            int id = dictionary.add(word.toCharArray(), 0, word.length());
+            assertEquals(word, dictionary.get(id));
+            assertEquals(id, dictionary.get(word));
+        }
+    }
+
+
+    @Test
+    void unpairedSurrogatesSurviveWriteAndRead() throws IOException {
+        String[] words = { "a\uD800b", "\uDE00", "emoji\uD83D\uDE00", "kafka" };
+
+        Dictionary dictionary = new Dictionary();
+        for (String word : words) dictionary.add(word.toCharArray(), 0, word.length());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        dictionary.write(new DataOutputStream(bytes));
+
+        Dictionary read = new Dictionary();
+        read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        for (int id = 0; id < words.length; id++) {
+            assertEquals(words[id], dictionary.get(id));
+            assertEquals(words[id], read.get(id));
+            assertEquals(id, read.get(words[id])); // hashed from the same chars
+            assertEquals(words[id], dictionary.copy(new int[] { id }).get(0));
+        }
+
+        assertEquals(Dictionary.NOT_FOUND, read.get("a?b"));
+    }
+
+
+    @Test
+    void copyKeepsSelectedWordsInOrder() {
+        Dictionary dictionary = new Dictionary();
+        for (String word : "kafka consumer lag größe".split(" ")) dictionary.add(word.toCharArray(), 0, word.length());
+
+        Dictionary copy = dictionary.copy(new int[] { 3, 0 });
+
+        assertEquals(2, copy.size());
+        assertEquals("größe", copy.get(0));
+        assertEquals(1, copy.get("kafka"));
+        assertEquals(Dictionary.NOT_FOUND, copy.get("consumer"));
+        assertEquals(2, copy.add("lag".toCharArray(), 0, 3));
+    }
+
+
+    @Test
+    void longWordsSpanSegments() {
+        Dictionary dictionary = new Dictionary();
+        String longWord = "x".repeat(100_000);
+
+        assertEquals(0, dictionary.add("kafka".toCharArray(), 0, 5));
+        assertEquals(1, dictionary.add(longWord.toCharArray(), 0, longWord.length()));
+        assertEquals(2, dictionary.add("lag".toCharArray(), 0, 3));
+
+        assertEquals(longWord, dictionary.get(1));
+        assertEquals("lag", dictionary.get(2));
+        assertNull(dictionary.get(3));
+    }
+
+
+    @Test
+    void concurrentAddsAgreeOnIds() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        int words = 20_000;
+
+        List<Future<int[]>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                int offset = t * 997;
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[words];
+                    for (int i = 0; i < words; i++) {
+                        int word = (i + offset) % words;
+                        char[] chars = ("word" + word).toCharArray();
+                        ids[word] = dictionary.add(chars, 0, chars.length);
+                    }
+                    return ids;
+                }));
+            }
+        }
+
+        int[] ids = futures.get(0).get();
+        for (Future<int[]> future : futures) assertArrayEquals(ids, future.get());
+
+        assertEquals(words, dictionary.size());
+        for (int word = 0; word < words; word++) {
+            assertEquals("word" + word, dictionary.get(ids[word]));
+            assertEquals(ids[word], dictionary.get("word" + word));
+        }
+    }
+
 }
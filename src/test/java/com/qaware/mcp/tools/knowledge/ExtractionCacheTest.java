@@ -0,0 +1,70 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExtractionCacheTest {
+
+    @Test
+    void extractsIdenticalBytesOnce(@TempDir Path dir) {
+        AtomicInteger extractions = new AtomicInteger();
+
+        ExtractionCache extractionCache = new ExtractionCache(dir, 1 << 20);
+        assertEquals("text a", extractionCache.get(bytes("a"), () -> extract("a", extractions)));
+        assertEquals("text a", extractionCache.get(bytes("a"), () -> extract("a", extractions)));
+        assertEquals("text b", extractionCache.get(bytes("b"), () -> extract("b", extractions)));
+        assertEquals(2, extractions.get());
+
+        ExtractionCache restarted = new ExtractionCache(dir, 1 << 20);
+        assertEquals(2, restarted.size());
+        assertEquals("text a", restarted.get(bytes("a"), () -> extract("a", extractions)));
+        assertEquals(2, extractions.get());
+    }
+
+
+    @Test
+    void evictsLeastRecentlyUsed(@TempDir Path dir) {
+        AtomicInteger extractions = new AtomicInteger();
+
+        ExtractionCache extractionCache = new ExtractionCache(dir, 15); // room for two texts of 6 bytes
+        extractionCache.get(bytes("a"), () -> extract("a", extractions));
+        extractionCache.get(bytes("b"), () -> extract("b", extractions));
+        extractionCache.get(bytes("a"), () -> extract("a", extractions)); // a is now more recently used than b
+        extractionCache.get(bytes("c"), () -> extract("c", extractions)); // evicts b
+        assertEquals(3, extractions.get());
+        assertEquals(2, extractionCache.size());
+
+        extractionCache.get(bytes("a"), () -> extract("a", extractions));
+        assertEquals(3, extractions.get());
+
+        extractionCache.get(bytes("b"), () -> extract("b", extractions));
+        assertEquals(4, extractions.get());
+    }
+
+
+    @Test
+    void sharesInstancesPerDirectory(@TempDir Path dir) {
+        assertSame(ExtractionCache.open(dir.toString(), 1 << 20), ExtractionCache.open(dir.resolve(".").toString(), 1 << 20));
+        assertNull(ExtractionCache.open(null, 1 << 20));
+    }
+
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    private static String extract(String content, AtomicInteger extractions) {
+        extractions.incrementAndGet();
+        return "text " + content;
+    }
+
+}
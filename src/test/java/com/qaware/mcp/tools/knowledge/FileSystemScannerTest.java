@@ -0,0 +1,105 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileSystemScannerTest {
+
+    private static final long TIMEOUT_MILLIS = 20_000; // some platforms poll for changes only every few seconds
+
+
+    @Test
+    void fullScanReportsAllSupportedFiles(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("a.md"), "a");
+        Files.writeString(dir.resolve("b.bin"), "b");
+
+        Map<String, Long> reported = new ConcurrentHashMap<>();
+        FileSystemScanner scanner = new FileSystemScanner(dir.toString());
+
+        assertTrue(scanner.scan(location -> reported.put(name(location), location.getVersion())));
+        assertEquals(Map.of("a.md", Files.getLastModifiedTime(dir.resolve("a.md")).toMillis()), reported);
+    }
+
+
+    @Test
+    void textIsReadByLoad(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("a.md"), "Größe");
+
+        Map<String, Location> reported = new ConcurrentHashMap<>();
+        new FileSystemScanner(dir.toString()).scan(location -> reported.put(name(location), location));
+
+        Location location = reported.get("a.md");
+        location.load();
+        Files.delete(dir.resolve("a.md")); // the index stage only tokenizes
+
+        assertEquals("Größe", location.getChars().toString());
+    }
+
+
+    @Test
+    void watchModeReportsRetriedFiles(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("a.md"), "a");
+        Files.writeString(dir.resolve("b.md"), "b");
+
+        Map<String, Long> reported = new ConcurrentHashMap<>();
+        FileSystemScanner scanner = new FileSystemScanner(true, dir.toString());
+        assertTrue(scanner.scan(location -> { }));
+
+        scanner.retry(List.of(dir.resolve("a.md").toAbsolutePath().toString(), dir.resolve("gone.md").toAbsolutePath().toString()));
+
+        assertFalse(scanner.scan(location -> reported.put(name(location), location.getVersion())));
+        assertEquals(Map.of("a.md", Files.getLastModifiedTime(dir.resolve("a.md")).toMillis(), "gone.md", Location.DELETED), reported);
+
+        reported.clear();
+        assertFalse(scanner.scan(location -> reported.put(name(location), location.getVersion())));
+        assertEquals(Map.of(), reported); // retried once
+    }
+
+
+    @Test
+    void watchModeReportsOnlyChanges(@TempDir Path dir) throws IOException, InterruptedException {
+        Files.writeString(dir.resolve("a.md"), "a");
+        Files.writeString(dir.resolve("b.md"), "b");
+
+        Map<String, Long> reported = new ConcurrentHashMap<>();
+        FileSystemScanner scanner = new FileSystemScanner(true, dir.toString());
+
+        assertTrue(scanner.scan(location -> reported.put(name(location), location.getVersion()))); // first scan is a full scan
+        assertEquals(2, reported.size());
+
+        reported.clear();
+        assertFalse(scanner.scan(location -> reported.put(name(location), location.getVersion())));
+        assertTrue(reported.isEmpty());
+
+        Files.createDirectories(dir.resolve("sub"));
+        Files.writeString(dir.resolve("sub/c.md"), "c");
+        Files.delete(dir.resolve("a.md"));
+
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (reported.size() < 2 && System.currentTimeMillis() < end) {
+            assertFalse(scanner.scan(location -> reported.put(name(location), location.getVersion())));
+            Thread.sleep(50);
+        }
+
+        assertEquals(Location.DELETED, reported.get("a.md"));
+        assertTrue(reported.get("c.md") > 0);
+        assertFalse(reported.containsKey("b.md"));
+    }
+
+
+    private static String name(Location location) {
+        return location.getId().substring(location.getId().lastIndexOf('/') + 1);
+    }
+
+}
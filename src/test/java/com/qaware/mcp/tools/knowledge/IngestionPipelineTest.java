@@ -0,0 +1,102 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class IngestionPipelineTest {
+
+    @Test
+    void indexesAllLocationsWithBoundedConcurrency() {
+        IngestionPipeline ingestionPipeline = new IngestionPipeline(8, 2, 3);
+
+        Set<CharSequence> indexed = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < 40; i++) {
+            ingestionPipeline.submit(location("doc" + i, i % 4 == 0, i == 13), chars -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep();
+                indexed.add(chars.toString());
+                running.decrementAndGet();
+            });
+        }
+
+        ingestionPipeline.await();
+
+        assertEquals(39, indexed.size()); // the failing location is skipped
+        assertTrue(maxRunning.get() <= 3);
+
+        List<IngestionPipeline.Stage> stages = ingestionPipeline.stages();
+        assertEquals(40, stages.get(0).completed());
+        assertEquals(10, stages.get(1).completed());
+        assertEquals(1, stages.get(2).failed());
+        assertEquals(39, stages.get(2).completed());
+        assertEquals(0, stages.get(2).queued());
+
+        assertEquals(List.of("doc13"), ingestionPipeline.drainFailed());
+        assertEquals(List.of(), ingestionPipeline.drainFailed());
+    }
+
+
+    @Test
+    void rejectedTaskFailsAndReleasesItsPermit() {
+        ExecutorService executorService = IngestionPipeline.newPool("test-", 1);
+        executorService.shutdown();
+
+        IngestionPipeline.Stage stage = new IngestionPipeline.Stage("test", executorService, 1);
+        AtomicInteger failures = new AtomicInteger();
+
+        // blocks forever if the permit of the first rejected task leaked
+        for (int i = 0; i < 2; i++) stage.submit(() -> { }, () -> { }, failures::incrementAndGet);
+
+        assertEquals(2, failures.get());
+        assertEquals(2, stage.failed());
+        assertEquals(0, stage.queued());
+    }
+
+
+    private static Location location(String id, boolean needsParsing, boolean fails) {
+        return new Location() {
+
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public long getVersion() {
+                return 1;
+            }
+
+            @Override
+            public CharSequence getChars() {
+                if (fails) throw new IllegalStateException("broken " + id);
+                return id;
+            }
+
+            @Override
+            public boolean needsParsing() {
+                return needsParsing;
+            }
+        };
+    }
+
+
+    private static void sleep() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
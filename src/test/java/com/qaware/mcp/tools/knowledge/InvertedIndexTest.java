@@ -0,0 +1,119 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+class InvertedIndexTest {
+
+    private final Dictionary dictionary = new Dictionary();
+
+
+    @Test
+    void scoresLikeSimpleDoc() {
+        SimpleDoc[] docs = {
+            doc(7, "Kafka consumer lag. The consumer reads a partition, the producer writes the partition."),
+            doc(3, "Der Consumer liest die Partition. Kafka Kafka Kafka!"),
+            doc(12, "Nothing relevant here at all.")
+        };
+
+        InvertedIndex invertedIndex = new InvertedIndex();
+        for (SimpleDoc doc : docs) invertedIndex.add(doc);
+
+        IntIntHashMap ordinals = new IntIntHashMap();
+        for (int i = 0; i < docs.length; i++) ordinals.put(docs[i].id(), i);
+
+        // all terms as one query, so that the entries of several terms are grouped by document
+        int[] tokenIds = new int[dictionary.size()];
+        float[] weights = new float[tokenIds.length];
+        for (int t = 0; t < tokenIds.length; t++) {
+            tokenIds[t] = t;
+            weights[t]  = 1 + t % 3 / 2f;
+        }
+
+        Scores expected = new Scores().reset(docs);
+        for (int i = 0; i < docs.length; i++) {
+            for (int t = 0; t < tokenIds.length; t++) docs[i].addScore(expected.get(i), tokenIds[t], weights[t]);
+        }
+
+        Scores actual = new Scores().reset(docs);
+        InvertedIndex.Matches matches = invertedIndex.bound(tokenIds, weights, ordinals, docs, actual);
+        for (int i = 0; i < docs.length; i++) invertedIndex.score(matches, i, actual);
+
+        for (int i = 0; i < docs.length; i++) assertArrayEquals(expected.get(i), actual.get(i), 0);
+    }
+
+
+    @Test
+    void boundsDocumentsContainingTheToken() {
+        SimpleDoc[] docs = {
+            doc(7, "Kafka consumer lag. The consumer reads a partition, the producer writes the partition."),
+            doc(3, "Der Consumer liest die Partition. Kafka Kafka Kafka!"),
+            doc(12, "Nothing relevant here at all.")
+        };
+
+        InvertedIndex invertedIndex = new InvertedIndex();
+        for (SimpleDoc doc : docs) invertedIndex.add(doc);
+
+        IntIntHashMap ordinals = new IntIntHashMap();
+        for (int i = 0; i < docs.length; i++) ordinals.put(docs[i].id(), i);
+
+        for (int tokenId = 0; tokenId < dictionary.size(); tokenId++) {
+            Scores scores = new Scores().reset(docs);
+            invertedIndex.bound(new int[] { tokenId }, new float[] { 1.5f }, ordinals, docs, scores);
+
+            for (int i = 0; i < docs.length; i++) {
+                float expected = docs[i].lastPos(tokenId) == SimpleDoc.NOT_FOUND ? 0 : 1.5f * docs[i].impact(tokenId);
+                assertEquals(expected, scores.bound(i), 0);
+            }
+        }
+    }
+
+
+    @Test
+    void ignoresDocumentsOutsideTheSnapshotAndCompacts() {
+        SimpleDoc kept    = doc(1, "kafka broker");
+        SimpleDoc removed = doc(2, "kafka consumer reads partition offsets");
+
+        InvertedIndex invertedIndex = new InvertedIndex();
+        invertedIndex.add(kept);
+        invertedIndex.add(removed);
+
+        invertedIndex.remove(removed);
+        assertTrue(invertedIndex.needsCompaction());
+
+        SimpleDoc[] docs = { kept };
+        IntIntHashMap ordinals = new IntIntHashMap();
+        ordinals.put(kept.id(), 0);
+
+        int[] tokenIds = { dictionary.get("kafka") };
+        float[] weights = { 1 };
+
+        Scores expected = new Scores().reset(docs);
+        kept.addScore(expected.get(0), tokenIds[0], 1);
+
+        Scores before = new Scores().reset(docs);
+        invertedIndex.score(invertedIndex.bound(tokenIds, weights, ordinals, docs, before), 0, before);
+
+        invertedIndex.compact();
+        assertFalse(invertedIndex.needsCompaction());
+
+        Scores after = new Scores().reset(docs);
+        invertedIndex.score(invertedIndex.bound(tokenIds, weights, ordinals, docs, after), 0, after);
+
+        assertEquals(1f, expected.get(0)[0]);
+        assertArrayEquals(expected.get(0), before.get(0), 0);
+        assertArrayEquals(expected.get(0), after.get(0), 0);
+    }
+
+
+    private SimpleDoc doc(int id, String text) {
+        return new SimpleDoc(id, 0, dictionary, Linguistic.newFilter().reset(text));
+    }
+
+}
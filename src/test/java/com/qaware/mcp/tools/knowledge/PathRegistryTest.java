@@ -0,0 +1,38 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PathRegistryTest {
+
+    @Test
+    void normalizesPaths() {
+        String a = Path.of("a").toAbsolutePath().toString();
+        String b = Path.of("b").toAbsolutePath().toString();
+
+        assertArrayEquals(new String[] { a, b }, PathRegistry.normalize("b; ./a;;a"));
+    }
+
+
+    @Test
+    void reusesAndEvicts() {
+        AtomicInteger created = new AtomicInteger();
+        PathRegistry<Integer> registry = new PathRegistry<>(2, roots -> created.getAndIncrement());
+
+        assertEquals(0, registry.get("a;b"));
+        assertEquals(0, registry.get("b;a"));
+        assertEquals(1, registry.get("c"));
+        assertEquals(0, registry.get("a;b")); // now most recently used
+        assertEquals(2, registry.get("d"));   // evicts c
+
+        assertEquals(2, registry.size());
+        assertEquals(3, registry.get("c"));
+        assertEquals(4, created.get());
+    }
+
+}
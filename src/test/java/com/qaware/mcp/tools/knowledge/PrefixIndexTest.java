@@ -0,0 +1,58 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PrefixIndexTest {
+
+    @Test
+    void findsWordsStartingWithPrefixInOrder() {
+        Dictionary dictionary = dictionary("kafka", "kanal", "kafkaesque", "consumer", "kaffee", "größe", "groß", "grün");
+
+        assertEquals(List.of("kaffee", "kafka", "kafkaesque"), words(dictionary, "kaf", 10));
+        assertEquals(List.of("kafka", "kafkaesque"), words(dictionary, "kafka", 10));
+        assertEquals(List.of("kaffee", "kafka"), words(dictionary, "ka", 2));
+        assertEquals(List.of("groß", "größe", "grün"), words(dictionary, "gr", 10)); // by code point
+        assertEquals(List.of("größe"), words(dictionary, "grö", 10));
+        assertEquals(List.of(), words(dictionary, "kafkaesquer", 10));
+        assertEquals(8, words(dictionary, "", 10).size());
+    }
+
+
+    @Test
+    void followsAddedWords() {
+        Dictionary dictionary = new Dictionary();
+
+        for (int i = 0; i < 5000; i++) {
+            char[] word = ("w" + i).toCharArray();
+            dictionary.add(word, 0, word.length);
+
+            if (i % 700 == 0 || i == 4999) { // lookups in between sort the tail and merge it
+                List<String> expected = new ArrayList<>();
+                for (int j = 0; j <= i; j++) if (("w" + j).startsWith("w12")) expected.add("w" + j);
+                expected.sort(null);
+
+                assertEquals(expected, words(dictionary, "w12", 1000), "after " + i);
+            }
+        }
+    }
+
+
+    private static Dictionary dictionary(String... words) {
+        Dictionary dictionary = new Dictionary();
+        for (String word : words) dictionary.add(word.toCharArray(), 0, word.length());
+        return dictionary;
+    }
+
+
+    private static List<String> words(Dictionary dictionary, String prefix, int max) {
+        List<String> words = new ArrayList<>();
+        for (int id : dictionary.startingWith(prefix, max)) words.add(dictionary.get(id));
+        return words;
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class ResultCacheTest {
+
+    @Test
+    void keyCoversQueryLimitAndGeneration() {
+        ResultCache resultCache = new ResultCache(10, 1 << 20);
+
+        resultCache.put(new ResultCache.Key(new long[] { 1, 2 }, 100, 1), "r");
+
+        assertEquals("r", resultCache.get(new ResultCache.Key(new long[] { 1, 2 }, 100, 1)));
+        assertNull(resultCache.get(new ResultCache.Key(new long[] { 2, 1 }, 100, 1)));
+        assertNull(resultCache.get(new ResultCache.Key(new long[] { 1, 2 }, 200, 1)));
+        assertNull(resultCache.get(new ResultCache.Key(new long[] { 1, 2 }, 100, 2)));
+
+        assertEquals(1, resultCache.hits());
+        assertEquals(3, resultCache.misses());
+    }
+
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        ResultCache resultCache = new ResultCache(2, 1 << 20);
+
+        resultCache.put(key(1), "1");
+        resultCache.put(key(2), "2");
+        resultCache.get(key(1));
+        resultCache.put(key(3), "3");
+
+        assertEquals("1", resultCache.get(key(1)));
+        assertNull(resultCache.get(key(2)));
+        assertEquals("3", resultCache.get(key(3)));
+    }
+
+
+    @Test
+    void boundsMemory() {
+        ResultCache resultCache = new ResultCache(100, 1000);
+
+        resultCache.put(key(1), "x".repeat(300));
+        resultCache.put(key(2), "x".repeat(300));
+        assertEquals(1, resultCache.size());
+        assertNull(resultCache.get(key(1)));
+
+        resultCache.put(key(3), "x".repeat(1000)); // larger than the cache: not cached
+        assertNull(resultCache.get(key(3)));
+        assertEquals(1, resultCache.size());
+        assertEquals(128 + 8 + 600, resultCache.bytes());
+    }
+
+
+    private static ResultCache.Key key(long hash) {
+        return new ResultCache.Key(new long[] { hash }, 10, 1);
+    }
+
+}
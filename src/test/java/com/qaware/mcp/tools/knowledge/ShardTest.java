@@ -0,0 +1,54 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.qaware.mcp.tools.knowledge.nlp.Tokens;
+
+class ShardTest {
+
+    private final Dictionary dictionary = new Dictionary();
+
+
+    @Test
+    void rareTermPrunesDocumentsWithFrequentTermsOnly() {
+        SimpleDoc[] docs = new SimpleDoc[500];
+        String[] ids = new String[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            ids[i]  = String.format("doc%03d", i);
+            docs[i] = doc(i, i == 123 ? "Kafka consumer rebalancing" : "Kafka consumer number" + i);
+        }
+
+        int[] tokenIds = { tokenId("kafka"), tokenId("consumer"), tokenId("rebalancing") };
+        float[] weights = { 1, 1, 20 };
+
+        for (boolean withIndex : new boolean[] { false, true }) {
+            Shard shard = new Shard(withIndex);
+            if (withIndex) for (SimpleDoc doc : docs) shard.invertedIndex.add(doc);
+
+            for (boolean parallel : new boolean[] { false, true }) {
+                Shard.Result result = shard.score(new Shard.Snapshot(ids, docs, withIndex), tokenIds, weights, 3, true, Smoothing.KERNEL, parallel);
+
+                assertTrue(result.hitDocs.length < docs.length / 4, result.hitDocs.length + " documents scored");
+                assertEquals(20 + 1 / 2f + 1 / 3f, result.topScores.scores()[0], 0.0001f); // rebalancing plus its neighbors
+
+                shard.recycle(result);
+            }
+        }
+    }
+
+
+    private SimpleDoc doc(int id, String text) {
+        return new SimpleDoc(id, 0, dictionary, Linguistic.newFilter().reset(text));
+    }
+
+
+    private int tokenId(String word) {
+        Tokens tokens = Linguistic.newFilter().reset(word);
+        tokens.next();
+        return dictionary.get(tokens);
+    }
+
+}
@@ -1,8 +1,19 @@
 package com.qaware.mcp.tools.knowledge;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class SimpleDocTest {
 
@@ -28,4 +39,84 @@ class SimpleDocTest {
         assertEquals(scores[0], scores[10], 0.0001);
     }
 
+
+    @Test
+    void vectorizedSmoothingMatchesScalar() {
+        assumeTrue(SimpleDoc.VECTORIZED, "needs --add-modules jdk.incubator.vector and SIMD hardware");
+
+        Random random = new Random(42);
+
+        for (int round = 0; round < 200; round++) {
+            float[] scalar = new float[1 + random.nextInt(3000)];
+
+            int hits = random.nextInt(1 + scalar.length / (1 + random.nextInt(20)));
+            for (int i = 0; i < hits; i++) scalar[random.nextInt(scalar.length)] = 1 + random.nextFloat() * 70;
+
+            float[] vector = scalar.clone();
+
+            Smoothing smoothing = Smoothing.values()[round % Smoothing.values().length];
+            assertEquals(SimpleDoc.smoothScalar(scalar, smoothing), VectorSmoothing.smooth(vector, smoothing), 0.001f);
+            for (int i = 0; i < scalar.length; i++) assertEquals(scalar[i], vector[i], 0.001f);
+        }
+    }
+
+
+    @Test
+    void impactBoundsSmoothedScores() {
+        String[] words = { "Kafka", "Broker", "Partition", "Consumer", "Offset", "Topic", "Lag" };
+        Random random = new Random(42);
+        Dictionary dictionary = new Dictionary();
+
+        for (int round = 0; round < 50; round++) {
+            StringBuilder text = new StringBuilder();
+            int length = 1 + random.nextInt(2000);
+            for (int i = 0; i < length; i++) text.append(words[random.nextInt(1 + round % words.length)]).append(' ');
+
+            SimpleDoc doc = new SimpleDoc(round, 0, dictionary, Linguistic.newFilter().reset(text));
+
+            doc.forEachToken((tokenId, lastPos) -> {
+                for (Smoothing smoothing : Smoothing.values()) {
+                    float[] scores = new float[doc.size()];
+                    doc.addScore(scores, tokenId, 1);
+
+                    float max = SimpleDoc.smooth(scores, smoothing);
+                    assertTrue(max <= 1.05f * doc.impact(tokenId), max + " > " + doc.impact(tokenId));
+                }
+            });
+        }
+
+        SimpleDoc doc = new SimpleDoc(0, 0, dictionary, Linguistic.newFilter().reset("Kafka Broker Kafka Lag Kafka"));
+        assertTrue(doc.impact(dictionary.get("kafka")) >= 2); // three occurrences, packed at the distances 0, 1 and 1
+        assertEquals(1, doc.impact(dictionary.get("broker")));
+    }
+
+
+    @Test
+    void streamingMatchesChars(@TempDir Path dir) throws IOException {
+        String[] words = { "Kafka", "Broker", "Partition", "the", "und", "Grüße", "😀", "topic-based", "42", ".", "\n" };
+        Random random = new Random(42);
+
+        StringBuilder stringBuilder = new StringBuilder();
+        while (stringBuilder.length() < 300_000) stringBuilder.append(words[random.nextInt(words.length)]).append(' '); // several windows
+
+        String text = stringBuilder.toString();
+        Dictionary dictionary = new Dictionary();
+
+        byte[] expected = bytes(new SimpleDoc(1, 7, dictionary, Linguistic.newFilter().reset(text), null));
+
+        assertArrayEquals(expected, bytes(new SimpleDoc(1, 7, dictionary, Linguistic.newFilter(), new StringReader(text), null)));
+        assertArrayEquals(expected, bytes(new SimpleDoc(1, 7, dictionary, Linguistic.newFilter(), new StringReader(text), new TokenStore(dir))));
+    }
+
+
+    private static byte[] bytes(SimpleDoc simpleDoc) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(byteArrayOutputStream)) {
+            simpleDoc.write(out);
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
 }
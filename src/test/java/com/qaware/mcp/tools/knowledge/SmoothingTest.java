@@ -0,0 +1,75 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SmoothingTest {
+
+    @Test
+    void exponentialApproximatesKernel() {
+        Random random = new Random(42);
+
+        for (int round = 0; round < 100; round++) {
+            int count = 1 + random.nextInt(500);
+
+            int[] hits = new int[count];
+            float[] hitScores = new float[count];
+            for (int i = 0; i < count; i++) {
+                hits[i]      = (i == 0 ? 0 : hits[i - 1]) + 1 + random.nextInt(1 + random.nextInt(300)); // clusters and gaps
+                hitScores[i] = 1 + random.nextFloat() * 70;
+            }
+
+            float[] kernel      = new float[count];
+            float[] exponential = new float[count];
+            Smoothing.KERNEL.spread(hits, hitScores, count, kernel, false);
+            Smoothing.EXPONENTIAL.spread(hits, hitScores, count, exponential, false);
+
+            for (int i = 0; i < count; i++) {
+                assertTrue(Math.abs(exponential[i] - kernel[i]) <= 0.05f * kernel[i], exponential[i] + " vs. " + kernel[i]);
+            }
+        }
+    }
+
+
+    @Test
+    void exponentialSelectsLikeKernel() {
+        Random random = new Random(7);
+
+        float[] kernel = new float[50_000];
+        for (int i = 0; i < 500; i++) {
+            int cluster = random.nextInt(kernel.length - 100);
+            for (int j = random.nextInt(5); j >= 0; j--) kernel[cluster + random.nextInt(100)] += 1 + random.nextFloat() * 70;
+        }
+        float[] exponential = kernel.clone();
+
+        SimpleDoc.smooth(kernel, Smoothing.KERNEL);
+        SimpleDoc.smooth(exponential, Smoothing.EXPONENTIAL);
+
+        int k = 3000;
+        TopScores kernelTop      = new TopScores().reset(k);
+        TopScores exponentialTop = new TopScores().reset(k);
+        for (int i = 0; i < kernel.length; i++) {
+            kernelTop.add(kernel[i]);
+            exponentialTop.add(exponential[i]);
+        }
+
+        int both = 0;
+        for (int i = 0; i < kernel.length; i++) if (kernelTop.select(kernel[i]) & exponentialTop.select(exponential[i])) both++;
+
+        assertTrue(both >= 0.9 * k, both + " of " + k + " positions selected by both");
+    }
+
+
+    @Test
+    void singleHitIsUnchanged() {
+        float[] smoothed = new float[1];
+        Smoothing.EXPONENTIAL.spread(new int[] { 5 }, new float[] { 3 }, 1, smoothed, false);
+
+        assertEquals(3, smoothed[0], 0.0001f);
+    }
+
+}
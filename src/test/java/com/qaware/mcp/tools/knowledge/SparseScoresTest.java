@@ -0,0 +1,42 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SparseScoresTest {
+
+    @Test
+    void smoothsLikeDenseScores() {
+        Random random = new Random(42);
+        SparseScores sparseScores = new SparseScores();
+
+        for (int run = 0; run < 1000; run++) {
+            Smoothing smoothing = Smoothing.values()[run % Smoothing.values().length];
+            int size = 1 + random.nextInt(3000);
+            float[] dense = new float[size];
+
+            int hits = random.nextInt(12);
+            for (int i = 0; i < hits; i++) {
+                int pos = random.nextInt(10) == 0 ? (random.nextBoolean() ? 0 : size - 1) : random.nextInt(size);
+                float score = random.nextFloat() * 80;
+
+                SimpleDoc.addPositionScore(dense, pos, score);
+                sparseScores.add(pos, score);
+            }
+
+            SimpleDoc.smooth(dense, smoothing);
+            sparseScores.smooth(size, smoothing);
+
+            float[] actual = new float[size];
+            for (int i = 0; i < sparseScores.size(); i++) actual[sparseScores.position(i)] = sparseScores.value(i);
+
+            for (int i = 0; i < size; i++) assertEquals(dense[i], actual[i], "run " + run + " position " + i);
+
+            sparseScores.clear();
+        }
+    }
+
+}
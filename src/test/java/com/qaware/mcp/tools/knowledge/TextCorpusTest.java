@@ -0,0 +1,120 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class TextCorpusTest {
+
+    @Test
+    void extractsAllFiles() throws URISyntaxException {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+
+        String all = String.join("", new TextCorpus(new FileSystemScanner(resourceDir.toString())).getAllChunks());
+
+        assertTrue(all.contains("FILE/SOURCE: " + resourceDir.resolve("Text.txt")));
+        assertTrue(all.contains("um es ein bisschen länger zu machen."));
+        assertTrue(all.contains("Hello World"));
+        assertTrue(all.contains("Row 2b"));
+    }
+
+
+    @Test
+    void fastTextsStartWithTheTokenizedTexts() throws URISyntaxException {
+        Path resourceDir = Paths.get(getClass().getClassLoader().getResource("corpus-test").toURI());
+
+        Map<String, String> fast      = passages(new TextCorpus(new FileSystemScanner(resourceDir.toString())).getAllChunks());
+        Map<String, String> tokenized = passages(new Corpus(new FileSystemScanner(resourceDir.toString())).getAllChunks());
+
+        assertEquals(tokenized.keySet(), fast.keySet());
+        assertTrue(fast.size() > 1);
+
+        // the tokenized text ends with the last token, the fast one is complete
+        tokenized.forEach((file, text) -> assertTrue(fast.get(file).startsWith(text), file));
+    }
+
+
+    @Test
+    void keepsTheFullText() {
+        List<Location> locations = List.of(location("a", 1, "  the end.\n", new AtomicInteger()), location("b", 1, " \n", new AtomicInteger()));
+
+        assertEquals(text("a", "  the end.\n"), String.join("", new TextCorpus(consumer -> {
+            locations.forEach(consumer);
+            return true;
+        }).getAllChunks()));
+    }
+
+
+    @Test
+    void extractsOnlyChangedLocations() {
+        AtomicInteger reads = new AtomicInteger();
+        List<Location> locations = new ArrayList<>(List.of(location("a", 1, "first", reads), location("b", 1, "second", reads)));
+
+        TextCorpus textCorpus = new TextCorpus(consumer -> {
+            locations.forEach(consumer);
+            return true;
+        });
+
+        assertEquals(text("a", "first") + text("b", "second"), String.join("", textCorpus.getAllChunks()));
+        assertEquals(2, reads.get());
+
+        locations.set(1, location("b", 2, "modified", reads));
+        assertEquals(text("a", "first") + text("b", "modified"), String.join("", textCorpus.getAllChunks()));
+        assertEquals(3, reads.get());
+
+        locations.remove(0);
+        assertEquals(text("b", "modified"), String.join("", textCorpus.getAllChunks()));
+        assertEquals(3, reads.get());
+    }
+
+
+    /** Splits the output of {@code getAllChunks()} into the passages by file. */
+    private static Map<String, String> passages(Iterable<String> chunks) {
+        Map<String, String> passages = new TreeMap<>();
+
+        for (String passage : String.join("", chunks).split("\n➖➖\n")) {
+            int newLine = passage.indexOf('\n', 1);
+            passages.put(passage.substring(0, newLine), passage.substring(newLine + 1));
+        }
+
+        return passages;
+    }
+
+
+    private static String text(String id, String text) {
+        return "\n🟡 FILE/SOURCE: " + id + "\n" + text + "\n➖➖\n";
+    }
+
+
+    private static Location location(String id, long version, String text, AtomicInteger reads) {
+        return new Location() {
+
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public long getVersion() {
+                return version;
+            }
+
+            @Override
+            public CharSequence getChars() {
+                reads.incrementAndGet();
+                return text;
+            }
+        };
+    }
+
+}
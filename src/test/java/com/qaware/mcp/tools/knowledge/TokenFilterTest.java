@@ -0,0 +1,51 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.carrotsearch.hppc.IntHashSet;
+
+class TokenFilterTest {
+
+    @Test
+    void containsAllTokensAndRejectsMostOthers() {
+        Random random = new Random(42);
+
+        HeapTokenData tokenData = new HeapTokenData();
+        IntHashSet tokenIds = new IntHashSet();
+        for (int pos = 0; pos < 5000; pos++) {
+            int tokenId = random.nextInt(100_000);
+            tokenData.add(tokenId, pos, pos + 1);
+            tokenIds.add(tokenId);
+        }
+
+        TokenFilter tokenFilter = new TokenFilter(tokenData);
+
+        int falsePositives = 0;
+        for (int tokenId = 0; tokenId < 100_000; tokenId++) {
+            if (tokenIds.contains(tokenId)) {
+                assertTrue(tokenFilter.mayContain(tokenId), "false negative " + tokenId);
+            } else if (tokenFilter.mayContain(tokenId)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < (100_000 - tokenIds.size()) / 100, falsePositives + " false positives");
+    }
+
+
+    @Test
+    void emptyDocumentContainsNothing() {
+        TokenFilter tokenFilter = new TokenFilter(new HeapTokenData());
+
+        int found = 0;
+        for (int tokenId = 0; tokenId < 1000; tokenId++) if (tokenFilter.mayContain(tokenId)) found++;
+
+        assertEquals(0, found);
+    }
+
+}
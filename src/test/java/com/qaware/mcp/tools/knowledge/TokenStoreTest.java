@@ -0,0 +1,48 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.carrotsearch.hppc.procedures.IntIntProcedure;
+
+class TokenStoreTest {
+
+    @Test
+    void storedTokenDataEqualsHeapTokenData(@TempDir Path tempDir) {
+        HeapTokenData heapTokenData = new HeapTokenData();
+        int[] tokenIds = { 7, 3, 7, 42, 3, 7, 0 };
+        for (int pos = 0; pos < tokenIds.length; pos++) heapTokenData.add(tokenIds[pos], pos * 10, pos * 10 + 5);
+
+        TokenStore tokenStore = new TokenStore(tempDir);
+        tokenStore.store(new HeapTokenData()); // an empty document before does not disturb the layout
+        TokenData stored = tokenStore.store(heapTokenData);
+
+        assertEquals(heapTokenData.size(), stored.size());
+
+        for (int pos = 0; pos < tokenIds.length; pos++) {
+            assertEquals(heapTokenData.tokenId(pos), stored.tokenId(pos));
+            assertEquals(heapTokenData.previous(pos), stored.previous(pos));
+            assertEquals(heapTokenData.begin(pos), stored.begin(pos));
+            assertEquals(heapTokenData.end(pos), stored.end(pos));
+        }
+
+        for (int tokenId = -1; tokenId < 50; tokenId++) assertEquals(heapTokenData.lastPos(tokenId), stored.lastPos(tokenId));
+
+        assertEquals(lastPositions(heapTokenData), lastPositions(stored));
+    }
+
+
+    private static Map<Integer, Integer> lastPositions(TokenData tokenData) {
+        Map<Integer, Integer> lastPositions = new TreeMap<>();
+        IntIntProcedure procedure = lastPositions::put;
+        tokenData.forEachToken(procedure);
+        return lastPositions;
+    }
+
+}
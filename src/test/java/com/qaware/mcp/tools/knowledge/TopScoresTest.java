@@ -0,0 +1,69 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TopScoresTest {
+
+    @Test
+    void selectsExactlyTheHighestScores() {
+        Random random = new Random(42);
+
+        float[] scores = new float[1000];
+        for (int i = 0; i < scores.length; i++) scores[i] = random.nextInt(50) / 10f; // many ties, some zeros
+
+        TopScores topScores = new TopScores().reset(100);
+        for (float score : scores) topScores.add(score);
+
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        assertEquals(sorted[sorted.length - 100], topScores.threshold());
+
+        int selected = 0;
+        for (float score : scores) {
+            if (topScores.select(score)) {
+                assertTrue(score >= topScores.threshold());
+                selected++;
+            }
+        }
+        assertEquals(100, selected);
+    }
+
+
+    @Test
+    void tiesAreSelectedInOrder() {
+        TopScores topScores = new TopScores().reset(3);
+        for (float score : new float[] { 1, 2, 1, 1, 0 }) topScores.add(score);
+
+        assertEquals(1, topScores.floor());
+
+        assertTrue(topScores.select(1));
+        assertTrue(topScores.select(2));
+        assertTrue(topScores.select(1));
+        assertFalse(topScores.select(1));
+        assertFalse(topScores.select(0));
+    }
+
+
+    @Test
+    void selectsAllPositiveScoresIfBelowCapacity() {
+        TopScores topScores = new TopScores().reset(10);
+        for (float score : new float[] { 3, 0, 0.000001f, 2 }) topScores.add(score);
+
+        assertEquals(0, topScores.floor());
+        assertEquals(2, topScores.threshold());
+        assertTrue(topScores.select(3));
+        assertFalse(topScores.select(0));
+        assertTrue(topScores.select(2));
+
+        assertEquals(Float.POSITIVE_INFINITY, new TopScores().reset(10).threshold());
+        assertEquals(Float.POSITIVE_INFINITY, new TopScores().reset(0).floor());
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.qaware.mcp.tools.knowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class Utf8SourceTest {
+
+    private static final String[] PIECES = { "a", "Kafka ", "ä", "ß", "€", "😀", "\uD800", "\uDC00", "\n", "漢字" };
+
+
+    @Test
+    void decodesAllRangesLikeTheOriginal() {
+        Random random = new Random(42);
+
+        for (int run = 0; run < 200; run++) {
+            StringBuilder stringBuilder = new StringBuilder();
+            int pieces = random.nextInt(200);
+            for (int i = 0; i < pieces; i++) stringBuilder.append(PIECES[random.nextInt(PIECES.length)]);
+
+            String text = stringBuilder.toString();
+            String expected = new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8); // unpaired surrogates -> '?'
+
+            Utf8Source utf8Source = Utf8Source.encode(text, ByteBuffer::allocate);
+
+            assertEquals(text.length(), utf8Source.length());
+            assertEquals(expected, utf8Source.toString());
+
+            for (int i = 0; i < 50 && ! text.isEmpty(); i++) {
+                int start = random.nextInt(text.length());
+                int end   = start + random.nextInt(text.length() - start + 1);
+
+                assertEquals(expected.substring(start, end), utf8Source.subSequence(start, end));
+                assertEquals(expected.charAt(start), utf8Source.charAt(start));
+            }
+        }
+    }
+
+
+    @Test
+    void builderEncodesLikeEncode(@TempDir Path dir) {
+        Random random = new Random(42);
+        TokenStore tokenStore = new TokenStore(dir);
+
+        for (int run = 0; run < 100; run++) {
+            StringBuilder stringBuilder = new StringBuilder();
+            int pieces = random.nextInt(300);
+            for (int i = 0; i < pieces; i++) stringBuilder.append(PIECES[random.nextInt(PIECES.length)]);
+
+            String text = stringBuilder.toString();
+            Utf8Source expected = Utf8Source.encode(text, ByteBuffer::allocate);
+
+            Utf8Source.Builder builder = tokenStore.newSource();
+            for (int begin = 0; begin < text.length(); ) { // in random pieces, splitting surrogate pairs
+                int end = Math.min(text.length(), begin + 1 + random.nextInt(10));
+                builder.append(text, begin, end);
+                begin = end;
+            }
+            Utf8Source actual = builder.build();
+
+            assertEquals(expected.length(), actual.length());
+            assertEquals(expected.toString(), actual.toString());
+
+            for (int i = 0; i < 50 && ! text.isEmpty(); i++) {
+                int start = random.nextInt(text.length());
+                int end   = start + random.nextInt(text.length() - start + 1);
+
+                assertEquals(expected.subSequence(start, end), actual.subSequence(start, end));
+            }
+        }
+    }
+
+}
@@ -1,8 +1,12 @@
 package com.qaware.mcp.tools.knowledge.nlp;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +31,23 @@ class BytesDecoderTest {
         assertEquals("h�i�", bytesDecoder.toString());
     }
 
+    @Test
+    void testFile(@TempDir Path dir) throws IOException {
+        String text = "Grüße 😀 ".repeat(100);
+        Path file = Files.writeString(dir.resolve("test.txt"), text);
+
+        assertEquals(text, bytesDecoder.reset(file).toString());
+
+        for (int readSize = 4; readSize <= 16; readSize++) { // chunks ending within a char
+            assertEquals(text, bytesDecoder.reset(file, readSize).toString());
+        }
+
+        Files.delete(file); // nothing keeps the file open or mapped
+
+        assertEquals("", bytesDecoder.reset(Files.writeString(dir.resolve("empty.txt"), "")).toString());
+    }
+
+
     private void testIntern() {
         bytesDecoder.reset(TEST_STRING.getBytes(StandardCharsets.UTF_8));
 
@@ -2,6 +2,11 @@ package com.qaware.mcp.tools.knowledge.nlp;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
 class TokenizerSimpleTest {
@@ -13,6 +18,41 @@ class TokenizerSimpleTest {
     }
 
 
+    @Test
+    void streamingMatchesCharSequence() {
+        String[] pieces = { "a", "Kafka", " ", "-", ".", "ä", "longtokenlongtoken", "\n", "42" };
+        Random random = new Random(42);
+
+        for (int run = 0; run < 100; run++) {
+            StringBuilder stringBuilder = new StringBuilder();
+            int count = random.nextInt(300);
+            for (int i = 0; i < count; i++) stringBuilder.append(pieces[random.nextInt(pieces.length)]);
+
+            String text = stringBuilder.toString();
+            List<String> expected = tokens(new TokenizerSimple().reset(text));
+
+            for (int windowSize : new int[] { 1, 2, 7, 64 }) {
+                StringBuilder source = new StringBuilder();
+                assertEquals(expected, tokens(new TokenizerSimple(windowSize).reset(new StringReader(text), source)));
+                assertEquals(text, source.toString());
+            }
+        }
+    }
+
+
+    /** Returns each token with its offsets, checked against the source. */
+    private static List<String> tokens(Tokens tokens) {
+        List<String> list = new ArrayList<>();
+
+        while (tokens.next()) {
+            assertEquals(tokens.toString(), new String(tokens.buffer(), 0, tokens.length()));
+            list.add(tokens + "@" + tokens.begin() + "-" + tokens.end());
+        }
+
+        return list;
+    }
+
+
     private static void verify(String input, String expected) {
         StringBuilder stringBuilder = new StringBuilder("#");
 